@@ -1,5 +1,6 @@
 package by.eugene.maven;
 
+import by.eugene.maven.config.MigrationSettings;
 import by.eugene.maven.config.PropertiesUtils;
 
 public class Main {
@@ -9,7 +10,8 @@ public class Main {
                 properties.getProperty("db.url"),
                 properties.getProperty("db.username"),
                 properties.getProperty("db.password"),
-                properties.getProperty("migration.directory")
+                properties.getProperty("migration.directory"),
+                MigrationSettings.from(properties)
         );
 
         migrationTool.run();
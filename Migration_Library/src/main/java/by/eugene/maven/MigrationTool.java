@@ -3,11 +3,17 @@ package by.eugene.maven;
 import by.eugene.maven.commands.Command;
 import by.eugene.maven.commands.InformationCommand;
 import by.eugene.maven.commands.MigrateCommand;
+import by.eugene.maven.commands.PlanCommand;
+import by.eugene.maven.commands.ProvisionCommand;
 import by.eugene.maven.commands.RollbackCommand;
+import by.eugene.maven.commands.SquashCommand;
+import by.eugene.maven.commands.ValidateCommand;
 import by.eugene.maven.config.ConnectionManager;
+import by.eugene.maven.config.MigrationSettings;
 import by.eugene.maven.exceptions.WrongCommandParamException;
 import by.eugene.maven.migrations.MigrationExecutor;
 import by.eugene.maven.migrations.MigrationManager;
+import by.eugene.maven.migrations.template.TemplateDatabaseProvisioner;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
@@ -32,6 +38,10 @@ import java.util.Scanner;
  *   <li>info: Displays migration information.</li>
  *   <li>migrate: Executes pending migrations.</li>
  *   <li>rollback: Rolls back migrations to a specific version.</li>
+ *   <li>validate: Checks that applied migration files were not changed after they were applied.</li>
+ *   <li>plan: Shows what migrate or rollback would do, without executing anything.</li>
+ *   <li>squash: Squashes the migrations up to a version into a baseline file.</li>
+ *   <li>provision: Creates a migrated database by cloning a template database.</li>
  *   <li>exit: Exits the tool.</li>
  * </ul>
  */
@@ -56,18 +66,37 @@ public class MigrationTool {
      * @param migrationDirectory the directory where migration files are located
      */
     public MigrationTool(String url, String username, String password, String migrationDirectory) {
+        this(url, username, password, migrationDirectory, MigrationSettings.defaults());
+    }
+
+    /**
+     * Initializes the MigrationTool with the provided database connection parameters, migration directory
+     * and tuning settings.
+     *
+     * @param url the database connection URL
+     * @param username the database username
+     * @param password the database password
+     * @param migrationDirectory the directory where migration files are located
+     * @param settings the tuning settings read from {@code application.properties}
+     */
+    public MigrationTool(String url, String username, String password, String migrationDirectory,
+                         MigrationSettings settings) {
         log.info("Initializing MigrationTool with URL: {}, Username: {}, Migration Directory: {}",
                 url, username, migrationDirectory);
 
         ConnectionManager.init(url, username, password);
         this.connectionManager = ConnectionManager.getInstance();
-        this.migrationExecutor = new MigrationExecutor(connectionManager);
-        this.migrationManager = new MigrationManager(migrationExecutor, migrationDirectory);
+        this.migrationExecutor = new MigrationExecutor(connectionManager, settings);
+        this.migrationManager = new MigrationManager(migrationExecutor, migrationDirectory, settings);
 
         this.commands = List.of(
                 new MigrateCommand(this.migrationManager),
                 new RollbackCommand(this.migrationManager),
-                new InformationCommand(this.migrationManager)
+                new InformationCommand(this.migrationManager),
+                new ValidateCommand(this.migrationManager),
+                new PlanCommand(this.migrationManager),
+                new SquashCommand(this.migrationManager),
+                new ProvisionCommand(new TemplateDatabaseProvisioner(connectionManager, migrationDirectory, settings))
         );
 
         log.info("MigrationTool initialized successfully.");
@@ -77,11 +106,11 @@ public class MigrationTool {
      * Runs the migration tool, starting the command input loop.
      * <p>
      * This method prompts the user for commands in a loop and processes them accordingly. It waits for commands
-     * like "info", "migrate", "rollback", and "exit". If an unrecognized command is entered, it provides feedback to the user.
+     * like "info", "migrate", "rollback", "validate", "plan", "squash", "provision", and "exit". If an unrecognized command is entered, it provides feedback to the user.
      * </p>
      */
     public void run() {
-        System.out.println("==MIGRATION APP==\nStarted and waiting for commands (info, migrate, rollback, exit):");
+        System.out.println("==MIGRATION APP==\nStarted and waiting for commands (info, migrate, rollback, validate, plan, squash, provision, exit):");
         waitAndRunCommands();
         System.out.println("==MIGRATION APP==\nShut down successfully");
     }
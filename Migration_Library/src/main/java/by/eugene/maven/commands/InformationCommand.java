@@ -1,6 +1,7 @@
 package by.eugene.maven.commands;
 
 import by.eugene.maven.migrations.MigrationManager;
+import by.eugene.maven.migrations.MigrationStatus;
 
 import java.util.Collections;
 import java.util.List;
@@ -8,7 +9,9 @@ import java.util.List;
 /**
  * Command to display the current database version.
  * <p>
- * This command outputs the current version of the database by querying the {@link MigrationManager}.
+ * This command outputs the current version of the database and a summary of the migration status by querying the
+ * {@link MigrationManager}. The status is cached by the manager, so repeated calls, for example from readiness
+ * probes, do not query the database until a migrate or rollback run invalidates it.
  * It can be executed with the command {@code info} or with the help flag {@code info -h}.
  * </p>
  *
@@ -20,20 +23,22 @@ import java.util.List;
  *
  * <p><b>Command Details:</b></p>
  * <ul>
- *   <li><strong>info:</strong> Executes the command and prints the current database version.</li>
+ *   <li><strong>info:</strong> Executes the command and prints the current database version and migration status.</li>
  *   <li><strong>info -h:</strong> Displays the help message for the command.</li>
  * </ul>
  */
 public class InformationCommand extends Command{
     private final static String INFO_MESSAGE_PATTERN = "Current DB version: %s";
+    private final static String STATUS_MESSAGE_PATTERN = "Latest migration: %d, applied: %d, pending: %d, failed: %d, drifted: %d";
     private static final String HELP_MESSAGE = """
             Command: info
-            Description: Displays the current database version.
+            Description: Displays the current database version and migration status.
             Usage: 
               info              - Executes the command and prints the database version.
               info -h           - Displays this help message.
             Returns:
-              Outputs the current database version in the format: "Current DB version: <version>"
+              Outputs the current database version in the format: "Current DB version: <version>",
+              followed by the number of applied, pending, failed and drifted migrations.
             """;
 
     private final MigrationManager migrationManager;
@@ -63,6 +68,18 @@ public class InformationCommand extends Command{
      */
     @Override
     public void execute(List<String> args) {
-        System.out.println(INFO_MESSAGE_PATTERN.formatted(this.migrationManager.getCurrentDbVersion()));
+        MigrationStatus status = this.migrationManager.getStatus();
+        System.out.println(INFO_MESSAGE_PATTERN.formatted(status.currentVersion()));
+        System.out.println(STATUS_MESSAGE_PATTERN.formatted(status.latestVersion(), status.appliedCount(),
+                status.pendingVersions().size(), status.failedVersions().size(), status.driftedFiles().size()));
+        if (!status.pendingVersions().isEmpty()) {
+            System.out.println("Pending versions: " + status.pendingVersions());
+        }
+        if (!status.failedVersions().isEmpty()) {
+            System.out.println("Failed versions: " + status.failedVersions());
+        }
+        if (!status.driftedFiles().isEmpty()) {
+            System.out.println("Drifted files: " + status.driftedFiles());
+        }
     }
 }
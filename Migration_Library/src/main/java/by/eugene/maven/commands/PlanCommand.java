@@ -0,0 +1,108 @@
+package by.eugene.maven.commands;
+
+import by.eugene.maven.migrations.MigrationManager;
+import by.eugene.maven.migrations.plan.LockRisk;
+import by.eugene.maven.migrations.plan.MigrationPlan;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Command to show what {@code migrate} or {@code rollback} would do, without executing anything.
+ * <p>
+ * This command prints the ordered actions of a migrate or rollback run together with the statement count, the lock
+ * risk class of the statements and the predicted duration of every step. It reads the history table with a single
+ * query, so it is cheap enough to run against production replicas. It can be executed with the command
+ * {@code plan} and supports one optional parameter: {@code -version} to plan a rollback to the given version.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * Command planCommand = new PlanCommand(migrationManager);
+ * planCommand.execute(args);
+ * </pre>
+ *
+ * <p><b>Command Details:</b></p>
+ * <ul>
+ *   <li><strong>plan:</strong> Shows the pending migrations that {@code migrate} would apply.</li>
+ *   <li><strong>-version:</strong> Shows the rollbacks that {@code rollback -version} would execute.</li>
+ *   <li><strong>-h:</strong> Displays the help message for the command.</li>
+ * </ul>
+ */
+public class PlanCommand extends Command {
+    private static final String VERSION_PARAM = "-version";
+    private static final String HELP_MESSAGE = """
+            Command: plan
+            Description: Shows what migrate or rollback would do, without executing anything.
+            Usage:
+              plan                           - Shows the pending migrations that migrate would apply.
+              plan -version <target_version> - Shows the rollbacks that rollback -version would execute.
+              plan -h                        - Displays this help message.
+            Returns:
+              The ordered actions with statement counts, lock risk classes and predicted durations.
+            """;
+
+    private final MigrationManager migrationManager;
+
+    /**
+     * Constructs a new {@code PlanCommand} with the given {@code MigrationManager}.
+     *
+     * @param migrationManager the {@link MigrationManager} used to compute the plan
+     */
+    public PlanCommand(MigrationManager migrationManager) {
+        super("plan", List.of(VERSION_PARAM), HELP_MESSAGE);
+        this.migrationManager = migrationManager;
+    }
+
+    /**
+     * Computes and prints the plan.
+     *
+     * @param args the list of arguments passed to the command (may include the {@code -version} parameter)
+     */
+    @Override
+    public void execute(List<String> args) {
+        Map<String, String> paramsMap = parseParams(args);
+        String version = paramsMap.get(VERSION_PARAM);
+        MigrationPlan plan = version == null
+                ? this.migrationManager.planMigrations()
+                : this.migrationManager.planRollbacks(Integer.parseInt(version));
+        print(plan);
+    }
+
+    private static void print(MigrationPlan plan) {
+        String action = plan.direction() == MigrationPlan.Direction.MIGRATE ? "APPLY" : "ROLLBACK";
+        System.out.printf("Plan: %s from version %d to version %d, %d steps, predicted %s%n",
+                plan.direction().name().toLowerCase(), plan.currentVersion(), plan.targetVersion(),
+                plan.steps().size(), formatDuration(plan.predictedMs()));
+        if (plan.isEmpty()) {
+            System.out.println("Nothing to do.");
+            return;
+        }
+
+        for (MigrationPlan.Step step : plan.steps()) {
+            System.out.printf("  %s %d %s: %d statements, lock risk %s (%s)%s, predicted %s%n",
+                    action, step.version(), step.fileName(), step.statementCount(),
+                    step.highestRisk(), formatRisks(step.lockRisks()),
+                    step.transactional() ? "" : ", non-transactional",
+                    formatDuration(step.predictedMs()));
+            for (String statement : step.blockingStatements()) {
+                System.out.println("      " + statement);
+            }
+        }
+    }
+
+    private static String formatRisks(Map<LockRisk, Integer> risks) {
+        return risks.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> entry.getValue() + " " + entry.getKey().description())
+                .collect(Collectors.joining(", "));
+    }
+
+    private static String formatDuration(long ms) {
+        if (ms < 0) {
+            return "unknown";
+        }
+        return ms < 1000 ? "~" + ms + " ms" : "~%.1f s".formatted(ms / 1000.0);
+    }
+}
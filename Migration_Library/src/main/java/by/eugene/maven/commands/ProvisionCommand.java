@@ -0,0 +1,70 @@
+package by.eugene.maven.commands;
+
+import by.eugene.maven.exceptions.WrongCommandParamException;
+import by.eugene.maven.migrations.template.TemplateDatabaseProvisioner;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command to create a migrated database by cloning a template database.
+ * <p>
+ * The template is migrated once per migration set and rebuilt automatically when the migrations change (see
+ * {@link TemplateDatabaseProvisioner}), so creating a database costs a server-side copy instead of a full migrate
+ * run. It can be executed with the command {@code provision} and requires the {@code -database} parameter.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * Command provisionCommand = new ProvisionCommand(provisioner);
+ * provisionCommand.execute(args);
+ * </pre>
+ *
+ * <p><b>Command Details:</b></p>
+ * <ul>
+ *   <li><strong>-database:</strong> Specifies the name of the database to create.</li>
+ *   <li><strong>-h:</strong> Displays the help message for the command.</li>
+ * </ul>
+ */
+public class ProvisionCommand extends Command {
+    private static final String DATABASE_PARAM = "-database";
+    private static final String HELP_MESSAGE = """
+            Command: provision
+            Description: Creates a migrated database by cloning the template database of the current migrations.
+            Usage:
+              provision -database <name> - Creates the database, building the template first if needed.
+              provision -h               - Displays this help message.
+            Returns:
+              The name of the created database.
+            """;
+
+    private final TemplateDatabaseProvisioner provisioner;
+
+    /**
+     * Constructs a new {@code ProvisionCommand} with the given {@code TemplateDatabaseProvisioner}.
+     *
+     * @param provisioner the {@link TemplateDatabaseProvisioner} used to create databases
+     */
+    public ProvisionCommand(TemplateDatabaseProvisioner provisioner) {
+        super("provision", List.of(DATABASE_PARAM), HELP_MESSAGE);
+        this.provisioner = provisioner;
+    }
+
+    /**
+     * Creates the database.
+     *
+     * @param args the list of arguments passed to the command (includes the {@code -database} parameter)
+     * @throws WrongCommandParamException if the {@code -database} parameter is missing
+     */
+    @Override
+    public void execute(List<String> args) {
+        Map<String, String> paramsMap = parseParams(args);
+        String database = paramsMap.get(DATABASE_PARAM);
+        if (database == null) {
+            throw new WrongCommandParamException("Parameter %s is required".formatted(DATABASE_PARAM));
+        }
+
+        this.provisioner.createDatabase(database);
+        System.out.printf("Database %s created.%n", database);
+    }
+}
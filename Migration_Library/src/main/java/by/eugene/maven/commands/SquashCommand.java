@@ -0,0 +1,76 @@
+package by.eugene.maven.commands;
+
+import by.eugene.maven.exceptions.WrongCommandParamException;
+import by.eugene.maven.migrations.MigrationManager;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command to squash the migrations up to a version into a single baseline file.
+ * <p>
+ * The baseline replaces the squashed migrations when a fresh database is provisioned, so provisioning time no
+ * longer grows with the number of migrations. It can be executed with the command {@code squash}, requires the
+ * {@code -version} parameter and supports one optional parameter: {@code -output} to choose the baseline file.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * Command squashCommand = new SquashCommand(migrationManager);
+ * squashCommand.execute(args);
+ * </pre>
+ *
+ * <p><b>Command Details:</b></p>
+ * <ul>
+ *   <li><strong>-version:</strong> Specifies the highest migration version included in the baseline.</li>
+ *   <li><strong>-output:</strong> Specifies the baseline file to write (default {@code baseline-<version>.sql}).</li>
+ *   <li><strong>-h:</strong> Displays the help message for the command.</li>
+ * </ul>
+ */
+public class SquashCommand extends Command {
+    private static final String VERSION_PARAM = "-version";
+    private static final String OUTPUT_PARAM = "-output";
+    private static final String HELP_MESSAGE = """
+            Command: squash
+            Description: Squashes the migrations up to a version into a single baseline file.
+            Usage:
+              squash -version <version>                - Writes baseline-<version>.sql to the current directory.
+              squash -version <version> -output <file> - Writes the baseline to the given file.
+              squash -h                                - Displays this help message.
+            Returns:
+              The path of the baseline file. Add it to the migration directory to provision empty databases from it.
+            """;
+
+    private final MigrationManager migrationManager;
+
+    /**
+     * Constructs a new {@code SquashCommand} with the given {@code MigrationManager}.
+     *
+     * @param migrationManager the {@link MigrationManager} providing the migrations to squash
+     */
+    public SquashCommand(MigrationManager migrationManager) {
+        super("squash", List.of(VERSION_PARAM, OUTPUT_PARAM), HELP_MESSAGE);
+        this.migrationManager = migrationManager;
+    }
+
+    /**
+     * Writes the baseline file and prints its location.
+     *
+     * @param args the list of arguments passed to the command (includes the {@code -version} parameter)
+     * @throws WrongCommandParamException if the {@code -version} parameter is missing
+     */
+    @Override
+    public void execute(List<String> args) {
+        Map<String, String> paramsMap = parseParams(args);
+        String version = paramsMap.get(VERSION_PARAM);
+        if (version == null) {
+            throw new WrongCommandParamException("Parameter %s is required".formatted(VERSION_PARAM));
+        }
+
+        Path output = Path.of(paramsMap.getOrDefault(OUTPUT_PARAM, "baseline-%s.sql".formatted(version)));
+        Path baseline = this.migrationManager.squashMigrations(Integer.parseInt(version), output);
+        System.out.printf("Baseline written to %s. Add it to the migration directory to provision empty databases from it.%n",
+                baseline.toAbsolutePath());
+    }
+}
@@ -0,0 +1,73 @@
+package by.eugene.maven.commands;
+
+import by.eugene.maven.migrations.MigrationManager;
+import by.eugene.maven.migrations.MigrationValidator;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Command to check that applied migration files were not changed after they were applied.
+ * <p>
+ * This command compares the checksums recorded in the history table with the current migration files by using
+ * the {@link MigrationManager}. It can be executed with the command {@code validate} or with the help flag
+ * {@code validate -h}.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * Command validateCommand = new ValidateCommand(migrationManager);
+ * validateCommand.execute(args);
+ * </pre>
+ *
+ * <p><b>Command Details:</b></p>
+ * <ul>
+ *   <li><strong>validate:</strong> Validates the applied migrations and prints every changed or missing file.</li>
+ *   <li><strong>validate -h:</strong> Displays the help message for the command.</li>
+ * </ul>
+ */
+public class ValidateCommand extends Command {
+    private static final String VALID_MESSAGE_PATTERN = "Validation passed: %d applied migrations match their files";
+    private static final String UNVERIFIED_MESSAGE_PATTERN = "%d applied migrations have no recorded checksum and were not verified";
+    private static final String INVALID_MESSAGE_PATTERN = "Validation failed with %d problems:";
+    private static final String HELP_MESSAGE = """
+            Command: validate
+            Description: Checks that applied migration files were not changed or removed after they were applied.
+            Usage:
+              validate          - Compares the recorded checksums with the current migration files.
+              validate -h       - Displays this help message.
+            Returns:
+              Outputs "Validation passed" or the list of changed and missing migration files.
+            """;
+
+    private final MigrationManager migrationManager;
+
+    /**
+     * Constructs a new {@code ValidateCommand} with the given {@code MigrationManager}.
+     *
+     * @param migrationManager the {@link MigrationManager} used to validate the applied migrations
+     */
+    public ValidateCommand(MigrationManager migrationManager) {
+        super("validate", Collections.emptyList(), HELP_MESSAGE);
+        this.migrationManager = migrationManager;
+    }
+
+    /**
+     * Executes the validation and prints its result.
+     *
+     * @param args the list of arguments passed to the command (ignored for this command)
+     */
+    @Override
+    public void execute(List<String> args) {
+        MigrationValidator.Report report = this.migrationManager.validateAppliedMigrations();
+        if (report.isValid()) {
+            System.out.println(VALID_MESSAGE_PATTERN.formatted(report.verified()));
+        } else {
+            System.out.println(INVALID_MESSAGE_PATTERN.formatted(report.problems().size()));
+            report.problems().forEach(problem -> System.out.println("  " + problem));
+        }
+        if (report.unverified() > 0) {
+            System.out.println(UNVERIFIED_MESSAGE_PATTERN.formatted(report.unverified()));
+        }
+    }
+}
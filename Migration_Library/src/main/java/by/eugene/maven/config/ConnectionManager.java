@@ -68,6 +68,19 @@ public class ConnectionManager {
         log.info("ConnectionManager initialized successfully");
     }
 
+    /**
+     * Creates a connection manager that is independent of the singleton instance, for example to migrate a second
+     * database next to the one configured with {@link #init(String, String, String)}.
+     *
+     * @param url      the database URL
+     * @param username the database username
+     * @param password the database password
+     * @return a new connection manager
+     */
+    public static ConnectionManager create(String url, String username, String password) {
+        return new ConnectionManager(url, username, password);
+    }
+
     /**
      * Returns the singleton instance of {@link ConnectionManager}.
      *
@@ -110,4 +123,55 @@ public class ConnectionManager {
         }
     }
 
+    /**
+     * Creates a connection manager for another database on the same server, with the same credentials and URL
+     * parameters.
+     *
+     * @param database the name of the database
+     * @return a new connection manager for the database
+     */
+    public ConnectionManager forDatabase(String database) {
+        int hostStart = url.indexOf("//");
+        int pathStart = url.indexOf('/', hostStart + 2);
+        int query = url.indexOf('?', hostStart + 2);
+        String base = pathStart < 0 || query >= 0 && query < pathStart
+                ? url.substring(0, query < 0 ? url.length() : query)
+                : url.substring(0, pathStart);
+        String parameters = query < 0 ? "" : url.substring(query);
+        return new ConnectionManager(base + "/" + database + parameters, username, password);
+    }
+
+    /**
+     * Closes the shared connection, if one is open.
+     */
+    public void close() {
+        try {
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
+                log.debug("Database connection closed: URL={}", url);
+            }
+        } catch (SQLException e) {
+            log.warn("Unable to close the database connection: URL={}", url, e);
+        } finally {
+            connection = null;
+        }
+    }
+
+    /**
+     * Opens a new database connection that is not shared through {@link #getConnection()}. The caller owns the
+     * connection and must close it.
+     *
+     * @return a new {@link Connection} to the database
+     * @throws RuntimeException if the connection cannot be established
+     */
+    public Connection openConnection() {
+        try {
+            log.debug("Opening dedicated database connection: URL={}, Username={}", url, username);
+            return DriverManager.getConnection(url, username, password);
+        } catch (SQLException e) {
+            log.error("Connection can't be established: URL={}, username={}", url, username);
+            throw new RuntimeException("Database connection failed.", e);
+        }
+    }
+
 }
@@ -0,0 +1,200 @@
+package by.eugene.maven.config;
+
+import by.eugene.maven.migrations.ExecutionMode;
+import by.eugene.maven.migrations.InsertCoalescingCursor;
+import by.eugene.maven.migrations.LockRetryPolicy;
+import by.eugene.maven.migrations.TransactionMode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+/**
+ * Tuning settings of the migration tool.
+ * <p>
+ * This class collects the optional {@code migration.*} settings from {@code application.properties} and provides
+ * defaults for every setting that is not configured, so the tool can run with nothing but the connection settings.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationSettings settings = MigrationSettings.from(new PropertiesUtils("application.properties"));
+ * int batchSize = settings.getBatchSize();
+ * </pre>
+ *
+ * <p><b>Supported properties:</b></p>
+ * <ul>
+ *   <li><strong>migration.batch.size:</strong> maximum number of statements sent in one JDBC batch.</li>
+ *   <li><strong>migration.streaming.threshold:</strong> file size in bytes from which a migration file is
+ *   memory-mapped and streamed instead of being held in memory.</li>
+ *   <li><strong>migration.cache.directory:</strong> directory of the persistent parse cache; the cache is disabled
+ *   when the property is not set.</li>
+ *   <li><strong>migration.load.parallelism:</strong> number of migration files parsed and validated concurrently
+ *   at startup; {@code 1} loads them serially.</li>
+ *   <li><strong>migration.bundle.enabled:</strong> whether the precompiled migration bundle produced by the build
+ *   is used instead of listing and parsing the migration directory (default {@code true}).</li>
+ *   <li><strong>migration.lock.enabled:</strong> whether migrate and rollback runs take the cluster-wide migration
+ *   lock, so concurrently starting instances apply the migrations only once (default {@code true}).</li>
+ *   <li><strong>migration.lock.wait.timeout:</strong> maximum number of seconds to wait for the migration lock held
+ *   by another instance.</li>
+ *   <li><strong>migration.lock.heartbeat.interval:</strong> number of seconds between heartbeat queries on the lock
+ *   connection while the lock is held.</li>
+ *   <li><strong>migration.template.prefix:</strong> name prefix of the template databases used to provision
+ *   databases by cloning (default {@code migration}).</li>
+ *   <li><strong>migration.template.retention:</strong> number of days a template database of another migration set
+ *   is kept after it was last used, so pipelines sharing a server keep their templates (default {@code 7}).</li>
+ *   <li><strong>migration.transaction.mode:</strong> transaction granularity of migrate and rollback runs, one of
+ *   {@code all_or_nothing} (default), {@code per_migration} or {@code savepoint_per_migration} (see
+ *   {@link TransactionMode}).</li>
+ *   <li><strong>migration.execution.strategy:</strong> how the statements of a migration are sent, one of
+ *   {@code batch} (default, JDBC batches as before the setting existed), {@code per_statement},
+ *   {@code multi_statement} or {@code auto} (see {@link ExecutionMode}); a migration can override it with the
+ *   {@code execution} header directive.</li>
+ *   <li><strong>migration.retry.enabled:</strong> whether transactional migrations run under a lock timeout and are
+ *   retried when they fail on a lock or a deadlock (default {@code true}, see {@link LockRetryPolicy});
+ *   non-transactional migrations are never retried.</li>
+ *   <li><strong>migration.retry.lock.timeout:</strong> number of milliseconds a statement of a transactional
+ *   migration waits for a lock before it fails and is retried; a {@code lock_timeout} directive of the migration
+ *   takes precedence.</li>
+ *   <li><strong>migration.retry.budget:</strong> number of seconds after the first attempt of a migration during
+ *   which it is retried.</li>
+ *   <li><strong>migration.insert.coalesce:</strong> whether runs of single-row {@code INSERT ... VALUES} statements
+ *   of transactional migrations are merged into multi-row inserts of up to {@code migration.batch.size} statements
+ *   (default {@code true}, see {@link InsertCoalescingCursor}).</li>
+ * </ul>
+ */
+@Slf4j
+@Getter
+public class MigrationSettings {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_STREAMING_THRESHOLD = 16L * 1024 * 1024;
+    public static final int DEFAULT_LOAD_PARALLELISM = 1;
+    public static final long DEFAULT_LOCK_WAIT_TIMEOUT_SECONDS = 600;
+    public static final long DEFAULT_LOCK_HEARTBEAT_INTERVAL_SECONDS = 10;
+    public static final String DEFAULT_TEMPLATE_PREFIX = "migration";
+    public static final long DEFAULT_TEMPLATE_RETENTION_DAYS = 7;
+    public static final long DEFAULT_RETRY_LOCK_TIMEOUT_MILLIS = 5_000;
+    public static final long DEFAULT_RETRY_BUDGET_SECONDS = 300;
+
+    private final int batchSize;
+    private final long streamingThreshold;
+    private final Path cacheDirectory;
+    private final int loadParallelism;
+    private final boolean bundleEnabled;
+    private final boolean lockEnabled;
+    private final Duration lockWaitTimeout;
+    private final Duration lockHeartbeatInterval;
+    private final String templatePrefix;
+    private final Duration templateRetention;
+    private final TransactionMode transactionMode;
+    private final ExecutionMode executionMode;
+    private final boolean retryEnabled;
+    private final Duration retryLockTimeout;
+    private final Duration retryBudget;
+    private final boolean insertCoalescing;
+
+    private MigrationSettings(UnaryOperator<String> properties) {
+        this.batchSize = positiveInt(properties, "migration.batch.size", DEFAULT_BATCH_SIZE);
+        this.streamingThreshold = positiveLong(properties, "migration.streaming.threshold", DEFAULT_STREAMING_THRESHOLD);
+        String cacheDirectory = properties.apply("migration.cache.directory");
+        this.cacheDirectory = cacheDirectory == null ? null : Path.of(cacheDirectory);
+        this.loadParallelism = positiveInt(properties, "migration.load.parallelism", DEFAULT_LOAD_PARALLELISM);
+        this.bundleEnabled = bool(properties, "migration.bundle.enabled", true);
+        this.lockEnabled = bool(properties, "migration.lock.enabled", true);
+        this.lockWaitTimeout = Duration.ofSeconds(
+                positiveLong(properties, "migration.lock.wait.timeout", DEFAULT_LOCK_WAIT_TIMEOUT_SECONDS));
+        this.lockHeartbeatInterval = Duration.ofSeconds(
+                positiveLong(properties, "migration.lock.heartbeat.interval", DEFAULT_LOCK_HEARTBEAT_INTERVAL_SECONDS));
+        String templatePrefix = properties.apply("migration.template.prefix");
+        this.templatePrefix = templatePrefix == null ? DEFAULT_TEMPLATE_PREFIX : templatePrefix;
+        this.templateRetention = Duration.ofDays(
+                positiveLong(properties, "migration.template.retention", DEFAULT_TEMPLATE_RETENTION_DAYS));
+        this.transactionMode = enumValue(properties, "migration.transaction.mode", TransactionMode.ALL_OR_NOTHING);
+        this.executionMode = enumValue(properties, "migration.execution.strategy", ExecutionMode.BATCH);
+        this.retryEnabled = bool(properties, "migration.retry.enabled", true);
+        this.retryLockTimeout = Duration.ofMillis(
+                positiveLong(properties, "migration.retry.lock.timeout", DEFAULT_RETRY_LOCK_TIMEOUT_MILLIS));
+        this.retryBudget = Duration.ofSeconds(
+                positiveLong(properties, "migration.retry.budget", DEFAULT_RETRY_BUDGET_SECONDS));
+        this.insertCoalescing = bool(properties, "migration.insert.coalesce", true);
+    }
+
+    /**
+     * Returns the settings with every value set to its default.
+     *
+     * @return the default settings
+     */
+    public static MigrationSettings defaults() {
+        return new MigrationSettings(key -> null);
+    }
+
+    /**
+     * Reads the settings from the given properties, using defaults for missing values.
+     *
+     * @param properties the loaded application properties
+     * @return the settings
+     * @throws RuntimeException if a configured value is not a valid number or boolean
+     */
+    public static MigrationSettings from(PropertiesUtils properties) {
+        MigrationSettings settings = new MigrationSettings(key -> properties.getProperty(key, null));
+        log.info("Migration settings loaded: batch size {}, streaming threshold {} bytes, parse cache {}, "
+                        + "load parallelism {}, migration lock {}, transaction mode {}, execution strategy {}, "
+                        + "lock retries {}, insert coalescing {}",
+                settings.batchSize, settings.streamingThreshold,
+                settings.cacheDirectory == null ? "disabled" : settings.cacheDirectory, settings.loadParallelism,
+                settings.lockEnabled ? "enabled" : "disabled", settings.transactionMode, settings.executionMode,
+                settings.retryEnabled ? "enabled" : "disabled", settings.insertCoalescing ? "enabled" : "disabled");
+        return settings;
+    }
+
+    private static boolean bool(UnaryOperator<String> properties, String key, boolean defaultValue) {
+        String value = properties.apply(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+            log.error("Invalid value '{}' for property {}", value, key);
+            throw new RuntimeException("Invalid value '%s' for property %s; expected true or false".formatted(value, key));
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    private static <E extends Enum<E>> E enumValue(UnaryOperator<String> properties, String key, E defaultValue) {
+        String value = properties.apply(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid value '{}' for property {}", value, key);
+            throw new RuntimeException("Invalid value '%s' for property %s; expected one of %s".formatted(value, key,
+                    Arrays.toString(defaultValue.getDeclaringClass().getEnumConstants()).toLowerCase(Locale.ROOT)), e);
+        }
+    }
+
+    private static int positiveInt(UnaryOperator<String> properties, String key, int defaultValue) {
+        return Math.toIntExact(positiveLong(properties, key, defaultValue));
+    }
+
+    private static long positiveLong(UnaryOperator<String> properties, String key, long defaultValue) {
+        String value = properties.apply(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value);
+            if (parsed <= 0) {
+                throw new NumberFormatException("value must be positive");
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            log.error("Invalid value '{}' for property {}", value, key);
+            throw new RuntimeException("Invalid value '%s' for property %s".formatted(value, key), e);
+        }
+    }
+}
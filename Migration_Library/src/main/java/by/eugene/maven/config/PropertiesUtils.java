@@ -52,6 +52,18 @@ public class PropertiesUtils {
         return this.properties.getProperty(key);
     }
 
+    /**
+     * Retrieves the value of the specified property key, falling back to a default value.
+     *
+     * @param key          the property key
+     * @param defaultValue the value returned if the key is not found or its value is blank
+     * @return the trimmed property value, or {@code defaultValue} if the key is not found
+     */
+    public String getProperty(String key, String defaultValue) {
+        String value = this.properties.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
     private void init(String propertiesFilePath) {
         try (InputStream propertiesStream = PropertiesUtils.class.getClassLoader().getResourceAsStream(propertiesFilePath)) {
             if (propertiesStream == null) {
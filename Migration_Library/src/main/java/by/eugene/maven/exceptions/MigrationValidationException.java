@@ -0,0 +1,42 @@
+package by.eugene.maven.exceptions;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Exception thrown when one or more migration files are invalid.
+ * <p>
+ * This exception is used to report problems found while loading the migration directory, such as malformed header
+ * lines, missing {@code --migration--} or {@code --rollback--} markers and versions declared by more than one file.
+ * All problems found in a single load are reported together.
+ * </p>
+ *
+ * <p><b>Usage Example:</b></p>
+ * <pre>
+ * throw new MigrationValidationException(List.of("Version 3 is declared by files a.sql, b.sql"));
+ * </pre>
+ */
+public class MigrationValidationException extends RuntimeException {
+    @Getter
+    private final List<String> problems;
+
+    /**
+     * Constructs a new {@code MigrationValidationException} for a single problem.
+     *
+     * @param problem the description of the problem
+     */
+    public MigrationValidationException(String problem) {
+        this(List.of(problem));
+    }
+
+    /**
+     * Constructs a new {@code MigrationValidationException} listing every problem that was found.
+     *
+     * @param problems the descriptions of the problems
+     */
+    public MigrationValidationException(List<String> problems) {
+        super("Invalid migrations:\n  " + String.join("\n  ", problems));
+        this.problems = List.copyOf(problems);
+    }
+}
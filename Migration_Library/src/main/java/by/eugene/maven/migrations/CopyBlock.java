@@ -0,0 +1,385 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.exceptions.MigrationValidationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A {@code --copy--} block of a migration section, loading data into a table with {@code COPY ... FROM STDIN}.
+ * <p>
+ * A copy block starts with a marker line naming the table, optionally its columns, and the data format. The data
+ * either follows the marker inline, up to a line holding only {@code \.}, or is read from a side-car file that is
+ * resolved relative to the migration file:
+ * </p>
+ * <pre>
+ * --copy countries(code, name) format=csv header=true--
+ * code,name
+ * DE,Germany
+ * FR,France
+ * \.
+ * --copy orders format=binary file=orders.bin--
+ * </pre>
+ * <ul>
+ *   <li><strong>format:</strong> {@code text} (default), {@code csv} or {@code binary}; binary data needs a
+ *   side-car file.</li>
+ *   <li><strong>header:</strong> {@code true} if the first CSV line holds column names and is skipped.</li>
+ *   <li><strong>file:</strong> the side-car data file, relative to the migration file.</li>
+ * </ul>
+ * <p>
+ * The {@link SqlStatementTokenizer} returns a copy block as one statement holding the marker, with the position of
+ * inline data added as {@code line} and {@code bytes} attributes; the data itself is never decoded or kept in
+ * memory. These attributes are reserved for the tokenizer: a marker written with them is rejected. When the block
+ * is executed, {@link #openData(URL)} streams the raw bytes from the migration file or the side-car file into the
+ * connection. The checksum of the migration covers inline data, but not side-car files.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * if (CopyBlock.isCopy(sql)) {
+ *     CopyBlock block = CopyBlock.parse(sql, migration.fileName());
+ *     try (InputStream data = block.openData(migrationUrl)) {
+ *         copyManager.copyIn(block.command(), data);
+ *     }
+ * }
+ * </pre>
+ *
+ * @param table   the target table, optionally schema-qualified
+ * @param columns the target columns, empty for all columns
+ * @param format  the data format: {@code text}, {@code csv} or {@code binary}
+ * @param header  whether the CSV data starts with a header line
+ * @param file    the side-car data file relative to the migration file, or {@code null} for inline data
+ * @param line    the line of the migration file where inline data starts, {@code 0} for side-car data
+ * @param bytes   the length of the inline data in bytes, {@code 0} for side-car data
+ */
+public record CopyBlock(String table, List<String> columns, String format, boolean header, String file, int line,
+                        long bytes) {
+    /**
+     * The prefix of a copy block marker line.
+     */
+    public static final String MARKER_PREFIX = "--copy ";
+
+    /**
+     * The line that ends inline copy data.
+     */
+    public static final String DATA_TERMINATOR = "\\.";
+
+    private static final String MARKER_SUFFIX = "--";
+    private static final String FORMAT = "format";
+    private static final String HEADER = "header";
+    private static final String FILE_ATTRIBUTE = "file";
+    private static final String LINE = "line";
+    private static final String BYTES = "bytes";
+    private static final Pattern TABLE = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*)?");
+    private static final Pattern COLUMN = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*");
+    private static final Pattern FILE = Pattern.compile("[A-Za-z0-9_./-]+");
+    private static final Set<String> FORMATS = Set.of("text", "csv", "binary");
+    private static final int SKIP_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Creates a copy block, defensively copying the columns.
+     */
+    public CopyBlock {
+        columns = List.copyOf(columns);
+    }
+
+    /**
+     * Checks whether a statement returned by the {@link SqlStatementTokenizer} is a copy block.
+     *
+     * @param statement the statement
+     * @return {@code true} if the statement is a copy block marker
+     */
+    public static boolean isCopy(String statement) {
+        return statement.startsWith(MARKER_PREFIX);
+    }
+
+    /**
+     * Checks whether the data of a marker line as written in a migration file follows inline.
+     *
+     * @param marker the marker line, starting with {@value #MARKER_PREFIX}
+     * @return {@code true} if the marker declares no side-car file
+     * @throws MigrationValidationException if the marker is malformed or declares the reserved {@code line} or
+     *                                      {@code bytes} attributes
+     */
+    static boolean hasInlineData(String marker) {
+        Map<String, String> attributes = split(marker, null).attributes();
+        if (attributes.containsKey(LINE) || attributes.containsKey(BYTES)) {
+            throw invalid(null, marker, "line and bytes are reserved for the position of inline data");
+        }
+        return !attributes.containsKey(FILE_ATTRIBUTE);
+    }
+
+    /**
+     * Adds the position of the inline data to a marker line, as returned by the {@link SqlStatementTokenizer}.
+     *
+     * @param marker the marker line as written in the migration file
+     * @param line   the line of the migration file where the data starts
+     * @param bytes  the length of the data in bytes
+     * @return the marker with the {@code line} and {@code bytes} attributes
+     */
+    static String annotate(String marker, int line, long bytes) {
+        String text = marker.trim();
+        return "%s %s=%d %s=%d%s".formatted(text.substring(0, text.length() - MARKER_SUFFIX.length()).trim(),
+                LINE, line, BYTES, bytes, MARKER_SUFFIX);
+    }
+
+    /**
+     * Parses and validates a copy block.
+     *
+     * @param statement the copy block statement returned by the {@link SqlStatementTokenizer}
+     * @param fileName  the name of the migration file, used in error messages
+     * @return the copy block
+     * @throws MigrationValidationException if the marker is malformed
+     */
+    public static CopyBlock parse(String statement, String fileName) {
+        Marker marker = split(statement, fileName);
+        String format = "text";
+        boolean header = false;
+        String file = null;
+        int line = 0;
+        long bytes = 0;
+        for (Map.Entry<String, String> attribute : marker.attributes().entrySet()) {
+            String value = attribute.getValue();
+            switch (attribute.getKey()) {
+                case FORMAT -> format = value.toLowerCase(Locale.ROOT);
+                case HEADER -> header = Boolean.parseBoolean(value);
+                case FILE_ATTRIBUTE -> file = value;
+                case LINE -> line = (int) Math.min(parseNumber(value, fileName, statement), Integer.MAX_VALUE);
+                case BYTES -> bytes = parseNumber(value, fileName, statement);
+                default -> throw invalid(fileName, statement, "unknown attribute '%s'".formatted(attribute.getKey()));
+            }
+        }
+
+        if (!FORMATS.contains(format)) {
+            throw invalid(fileName, statement, "format must be one of " + FORMATS);
+        }
+        if (header && !format.equals("csv")) {
+            throw invalid(fileName, statement, "header=true requires format=csv");
+        }
+        if (file != null && (!FILE.matcher(file).matches() || file.startsWith("/") || Arrays.asList(file.split("/")).contains(".."))) {
+            throw invalid(fileName, statement, "file must be a relative path below the migration directory");
+        }
+        if (file != null && (line != 0 || bytes != 0)) {
+            throw invalid(fileName, statement, "line and bytes are reserved for the position of inline data");
+        }
+        if (file == null && format.equals("binary")) {
+            throw invalid(fileName, statement, "binary data must be read from a side-car file");
+        }
+        if (file == null && line <= 0) {
+            throw invalid(fileName, statement, "missing inline data");
+        }
+        return new CopyBlock(marker.table(), marker.columns(), format, header, file, line, bytes);
+    }
+
+    /**
+     * Splits a marker into the table, the columns and the {@code key=value} attributes, which are separated by
+     * whitespace. Both {@link #hasInlineData(String)} and {@link #parse(String, String)} read markers through this
+     * method, so they always agree on the attributes of a marker.
+     */
+    private static Marker split(String statement, String fileName) {
+        String text = statement.trim();
+        if (!isCopy(text) || !text.endsWith(MARKER_SUFFIX) || text.length() < MARKER_PREFIX.length() + 2) {
+            throw invalid(fileName, statement, "expected --copy table(columns) [key=value ...]--");
+        }
+        text = text.substring(MARKER_PREFIX.length(), text.length() - MARKER_SUFFIX.length()).trim();
+
+        int tableEnd = 0;
+        while (tableEnd < text.length() && text.charAt(tableEnd) != '(' && !Character.isWhitespace(text.charAt(tableEnd))) {
+            tableEnd++;
+        }
+        String table = text.substring(0, tableEnd);
+        if (!TABLE.matcher(table).matches()) {
+            throw invalid(fileName, statement, "invalid table name '%s'".formatted(table));
+        }
+
+        List<String> columns = new ArrayList<>();
+        int attributesStart = tableEnd;
+        if (tableEnd < text.length() && text.charAt(tableEnd) == '(') {
+            int close = text.indexOf(')', tableEnd);
+            if (close < 0) {
+                throw invalid(fileName, statement, "unclosed column list");
+            }
+            for (String column : text.substring(tableEnd + 1, close).split(",")) {
+                String name = column.trim();
+                if (!COLUMN.matcher(name).matches()) {
+                    throw invalid(fileName, statement, "invalid column name '%s'".formatted(name));
+                }
+                columns.add(name);
+            }
+            attributesStart = close + 1;
+        }
+        if (attributesStart < text.length() && !Character.isWhitespace(text.charAt(attributesStart))) {
+            throw invalid(fileName, statement, "expected whitespace before the attributes");
+        }
+
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (String attribute : text.substring(attributesStart).trim().split("\\s+")) {
+            if (attribute.isEmpty()) {
+                continue;
+            }
+            int separator = attribute.indexOf('=');
+            if (separator <= 0) {
+                throw invalid(fileName, statement, "expected key=value instead of '%s'".formatted(attribute));
+            }
+            String key = attribute.substring(0, separator);
+            if (attributes.put(key, attribute.substring(separator + 1)) != null) {
+                throw invalid(fileName, statement, "attribute '%s' is declared more than once".formatted(key));
+            }
+        }
+        return new Marker(table, columns, attributes);
+    }
+
+    /**
+     * Returns the {@code COPY ... FROM STDIN} command loading the data.
+     *
+     * @return the SQL command
+     */
+    public String command() {
+        return "COPY %s%s FROM STDIN WITH (FORMAT %s%s)".formatted(table,
+                columns.isEmpty() ? "" : " (" + String.join(", ", columns) + ")",
+                format, header ? ", HEADER true" : "");
+    }
+
+    /**
+     * Returns the marker line of the block as written in a migration file, without the position attributes.
+     *
+     * @return the marker line
+     */
+    public String marker() {
+        return "%s%s%s format=%s%s%s%s".formatted(MARKER_PREFIX, table,
+                columns.isEmpty() ? "" : "(" + String.join(", ", columns) + ")",
+                format, header ? " header=true" : "", file == null ? "" : " file=" + file, MARKER_SUFFIX);
+    }
+
+    /**
+     * Opens the raw data of the block.
+     * <p>
+     * Inline data is read from the migration file by skipping to its first line and limiting the stream to its
+     * length; side-car data is the whole side-car file. Bytes are passed through as they are, without decoding.
+     * </p>
+     *
+     * @param migration the location of the migration file
+     * @return the data stream, which the caller must close
+     * @throws IOException if the migration or side-car file cannot be read, or ends before the data
+     */
+    public InputStream openData(URL migration) throws IOException {
+        if (migration == null) {
+            throw new IOException("Location of the migration file is unknown");
+        }
+        if (file != null) {
+            return resolveFile(migration).toURL().openStream();
+        }
+
+        InputStream in = migration.openStream();
+        try {
+            byte[] buffer = new byte[SKIP_BUFFER_SIZE];
+            int newlines = line - 1;
+            while (newlines > 0) {
+                int read = in.read(buffer);
+                if (read < 0) {
+                    throw new EOFException("Migration file ends before copy data line " + line);
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n' && --newlines == 0) {
+                        InputStream rest = new SequenceInputStream(
+                                new ByteArrayInputStream(buffer, i + 1, read - i - 1), in);
+                        return new LimitedInputStream(rest, bytes);
+                    }
+                }
+            }
+            return new LimitedInputStream(in, bytes);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Resolves the side-car file against the migration file. A {@code jar:} URL is opaque and cannot be resolved as a
+     * URI, so its entry path is resolved by hand; the file name is validated to contain no {@code ..} segments.
+     */
+    private URI resolveFile(URL migration) throws IOException {
+        try {
+            URI uri = migration.toURI();
+            if (!uri.isOpaque()) {
+                return uri.resolve(file);
+            }
+            String location = uri.toString();
+            return new URI(location.substring(0, location.lastIndexOf('/') + 1) + file);
+        } catch (URISyntaxException e) {
+            throw new IOException("Unable to resolve %s against %s".formatted(file, migration), e);
+        }
+    }
+
+    private static long parseNumber(String value, String fileName, String statement) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw invalid(fileName, statement, "invalid number '%s'".formatted(value));
+        }
+    }
+
+    private static MigrationValidationException invalid(String fileName, String statement, String reason) {
+        return new MigrationValidationException("%sinvalid copy block %s; %s"
+                .formatted(fileName == null ? "" : fileName + ": ", statement, reason));
+    }
+
+    private record Marker(String table, List<String> columns, Map<String, String> attributes) {
+    }
+
+    /**
+     * Stream returning at most a fixed number of bytes of another stream.
+     */
+    private static final class LimitedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
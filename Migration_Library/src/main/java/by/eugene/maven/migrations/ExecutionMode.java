@@ -0,0 +1,57 @@
+package by.eugene.maven.migrations;
+
+/**
+ * Configured choice of the {@link ExecutionStrategy} of a migration, as set by the
+ * {@code migration.execution.strategy} setting or the {@code execution} header directive.
+ * <p>
+ * Every mode except {@link #AUTO} names a strategy; {@link #resolve} turns the mode into the strategy a section is
+ * actually executed with. Non-transactional migrations always resolve to {@link ExecutionStrategy#PER_STATEMENT},
+ * because a batch or a multi-statement query forms an implicit transaction block.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * ExecutionStrategy strategy = ExecutionMode.AUTO.resolve(section, directives);
+ * </pre>
+ */
+public enum ExecutionMode {
+    /**
+     * Always {@link ExecutionStrategy#PER_STATEMENT}.
+     */
+    PER_STATEMENT,
+
+    /**
+     * {@link ExecutionStrategy#BATCH} for transactional migrations; the default.
+     */
+    BATCH,
+
+    /**
+     * {@link ExecutionStrategy#MULTI_STATEMENT} for transactional migrations.
+     */
+    MULTI_STATEMENT,
+
+    /**
+     * {@link ExecutionStrategy#PER_STATEMENT} for single statements, {@link ExecutionStrategy#MULTI_STATEMENT} for
+     * transactional sections of several statements.
+     */
+    AUTO;
+
+    /**
+     * Returns the strategy to run a section with.
+     *
+     * @param section    the section to execute
+     * @param directives the execution directives of the migration
+     * @return the strategy to use
+     */
+    public ExecutionStrategy resolve(MigrationSection section, MigrationDirectives directives) {
+        if (!directives.transactional()) {
+            return ExecutionStrategy.PER_STATEMENT;
+        }
+        return switch (this) {
+            case PER_STATEMENT -> ExecutionStrategy.PER_STATEMENT;
+            case BATCH -> ExecutionStrategy.BATCH;
+            case MULTI_STATEMENT -> ExecutionStrategy.MULTI_STATEMENT;
+            case AUTO -> section.size() <= 1 ? ExecutionStrategy.PER_STATEMENT : ExecutionStrategy.MULTI_STATEMENT;
+        };
+    }
+}
@@ -0,0 +1,179 @@
+package by.eugene.maven.migrations;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Strategy used by {@link MigrationExecutor} to send the statements of a migration section to the database.
+ * <p>
+ * The strategies differ in the number of round trips a section costs:
+ * </p>
+ * <ul>
+ *   <li><strong>PER_STATEMENT:</strong> one {@code execute} and one round trip per statement. Required for
+ *   non-transactional migrations, and the most precise error reporting.</li>
+ *   <li><strong>BATCH:</strong> JDBC batches of up to {@link MigrationSettings#getBatchSize()} statements.</li>
+ *   <li><strong>MULTI_STATEMENT:</strong> statements are joined into one multi-statement query of up to
+ *   {@link MigrationSettings#getBatchSize()} statements and {@value #MAX_QUERY_CHARS} characters, which the driver
+ *   sends as a single pipelined request with one synchronization point, so a migration of hundreds of small DDL
+ *   statements costs a handful of round trips. An error names the query rather than the failing statement.</li>
+ * </ul>
+ * <p>
+ * The strategy is chosen per migration with the {@code execution} header directive (see {@link MigrationDirectives})
+ * or the {@code migration.execution.strategy} setting, both of which select an {@link ExecutionMode} that is resolved
+ * to a strategy per section.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * ExecutionStrategy strategy = ExecutionMode.AUTO.resolve(section, directives);
+ * long[] counts = strategy.execute(statement, cursor, batchSize, ExecutionStrategy.StatementRunner.DIRECT);
+ * </pre>
+ *
+ * @see by.eugene.maven.config.MigrationSettings
+ */
+@Slf4j
+public enum ExecutionStrategy {
+    PER_STATEMENT {
+        @Override
+        public long[] execute(Statement statement, StatementCursor cursor, int batchSize, StatementRunner runner)
+                throws SQLException {
+            long executed = 0;
+            long rowsAffected = 0;
+            while (cursor.hasNext()) {
+                String sql = cursor.next();
+                log.debug("Executing SQL command: {}", sql);
+                if (!runner.execute(statement, sql)) {
+                    rowsAffected += Math.max(statement.getUpdateCount(), 0);
+                }
+                executed++;
+            }
+            log.info("Executed {} SQL commands one by one", executed);
+            return new long[]{executed, rowsAffected};
+        }
+    },
+
+    BATCH {
+        @Override
+        public long[] execute(Statement statement, StatementCursor cursor, int batchSize, StatementRunner runner)
+                throws SQLException {
+            long executed = 0;
+            long rowsAffected = 0;
+            int batched = 0;
+            while (cursor.hasNext()) {
+                String sql = cursor.next();
+                log.debug("Adding SQL command to batch: {}", sql);
+                statement.addBatch(sql);
+                executed++;
+
+                if (++batched == batchSize) {
+                    rowsAffected += sumUpdateCounts(statement.executeBatch());
+                    batched = 0;
+                }
+            }
+
+            if (batched > 0) {
+                rowsAffected += sumUpdateCounts(statement.executeBatch());
+            }
+            log.info("SQL batch execution completed successfully");
+            return new long[]{executed, rowsAffected};
+        }
+    },
+
+    MULTI_STATEMENT {
+        @Override
+        public long[] execute(Statement statement, StatementCursor cursor, int batchSize, StatementRunner runner)
+                throws SQLException {
+            long executed = 0;
+            long rowsAffected = 0;
+            int queries = 0;
+            StringBuilder query = new StringBuilder();
+            int joined = 0;
+            while (cursor.hasNext()) {
+                String sql = cursor.next();
+                query.append(sql).append(";\n");
+                executed++;
+
+                if (++joined == batchSize || query.length() >= MAX_QUERY_CHARS) {
+                    rowsAffected += executeQuery(statement, query.toString());
+                    queries++;
+                    query.setLength(0);
+                    joined = 0;
+                }
+            }
+
+            if (joined > 0) {
+                rowsAffected += executeQuery(statement, query.toString());
+                queries++;
+            }
+            log.info("Executed {} SQL commands in {} multi-statement queries", executed, queries);
+            return new long[]{executed, rowsAffected};
+        }
+    };
+
+    /**
+     * The length from which a multi-statement query is sent even if it holds fewer statements than the batch size.
+     */
+    public static final int MAX_QUERY_CHARS = 1024 * 1024;
+
+    /**
+     * Executes the statements of a cursor.
+     *
+     * @param statement the statement to execute the SQL commands with
+     * @param cursor    the statements to execute
+     * @param batchSize the maximum number of statements sent in one batch or query
+     * @param runner    executes a single statement; used by {@link #PER_STATEMENT} only, for example to retry it
+     * @return the number of executed statements and the number of affected rows
+     * @throws SQLException if a statement fails
+     */
+    public abstract long[] execute(Statement statement, StatementCursor cursor, int batchSize, StatementRunner runner)
+            throws SQLException;
+
+    /**
+     * Executes a single statement of a {@link #PER_STATEMENT} section.
+     */
+    @FunctionalInterface
+    public interface StatementRunner {
+        /**
+         * Runs a statement directly with {@link Statement#execute(String)}.
+         */
+        StatementRunner DIRECT = Statement::execute;
+
+        /**
+         * Executes the statement.
+         *
+         * @param statement the statement to execute the SQL command with
+         * @param sql       the SQL command
+         * @return {@code true} if the first result is a result set
+         * @throws SQLException if the statement fails
+         */
+        boolean execute(Statement statement, String sql) throws SQLException;
+    }
+
+    private static long executeQuery(Statement statement, String query) throws SQLException {
+        long rowsAffected = 0;
+        boolean isResultSet = statement.execute(query);
+        while (true) {
+            if (!isResultSet) {
+                int updateCount = statement.getUpdateCount();
+                if (updateCount == -1) {
+                    break;
+                }
+                rowsAffected += updateCount;
+            }
+            isResultSet = statement.getMoreResults();
+        }
+        return rowsAffected;
+    }
+
+    private static long sumUpdateCounts(int[] updateCounts) {
+        long rows = 0;
+        for (int count : updateCounts) {
+            if (count > 0) {
+                rows += count;
+            }
+        }
+        return rows;
+    }
+}
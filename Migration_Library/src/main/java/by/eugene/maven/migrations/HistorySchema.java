@@ -0,0 +1,168 @@
+package by.eugene.maven.migrations;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Versioned schema of the history table.
+ * <p>
+ * The schema version is stored in the one-row {@code history_meta} table. {@link #ensure(Connection)} creates the
+ * history table on a new database and upgrades an existing one step by step to {@link #CURRENT_VERSION}. Every step
+ * is idempotent ({@code IF NOT EXISTS}), a history table created before the meta table existed is treated as
+ * version 1, and the upgrade runs in one transaction under an advisory lock, so concurrent starts of the tool
+ * upgrade the table exactly once. The version is first read with plain queries, and the lock is only taken and DDL
+ * only run when an upgrade is needed, so starting the tool against an up-to-date database, including a read-only
+ * replica, writes nothing.
+ * </p>
+ *
+ * <p><b>Versions:</b></p>
+ * <ul>
+ *   <li><strong>1:</strong> {@code version}, {@code file} and {@code timestamp} of every applied migration.</li>
+ *   <li><strong>2:</strong> adds an index on {@code file} and the columns {@code checksum}, {@code execution_ms},
+ *   {@code statement_count}, {@code rows_affected}, {@code installed_by} and {@code success}.</li>
+ *   <li><strong>3:</strong> adds {@code migration_digest} to {@code history_meta}, the {@link MigrationDigest} of
+ *   the migration set applied by the last successful migrate run.</li>
+ *   <li><strong>4:</strong> adds {@code baseline} to {@code history}, marking the row of a baseline migration that
+ *   stands for every version up to its own.</li>
+ *   <li><strong>5:</strong> adds {@code attempts} to {@code history}, the number of attempts the migration needed
+ *   because of lock failures (see {@link LockRetryPolicy}).</li>
+ * </ul>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * HistorySchema.ensure(connectionManager.getConnection());
+ * </pre>
+ */
+@Slf4j
+public final class HistorySchema {
+    /**
+     * The schema version of the history table written by this version of the tool.
+     */
+    public static final int CURRENT_VERSION = 5;
+
+    private static final long UPGRADE_LOCK_KEY = 0x4D49475248495354L;
+
+    private static final String META_TABLE = """
+            create table if not exists history_meta (
+                id int primary key default 1 check (id = 1),
+                schema_version int not null
+                );
+            """;
+
+    /**
+     * The statements upgrading the schema from version {@code i} to version {@code i + 1}.
+     */
+    private static final List<List<String>> UPGRADES = List.of(
+            List.of("""
+                    create table if not exists history (
+                        version int primary key,
+                        file varchar,
+                        timestamp timestamp
+                        );
+                    """),
+            List.of("""
+                    alter table history
+                        add column if not exists checksum bigint,
+                        add column if not exists execution_ms bigint,
+                        add column if not exists statement_count int,
+                        add column if not exists rows_affected bigint,
+                        add column if not exists installed_by varchar default current_user,
+                        add column if not exists success boolean not null default true;
+                    """,
+                    "create index if not exists history_file_idx on history (file);"),
+            List.of("alter table history_meta add column if not exists migration_digest varchar;"),
+            List.of("alter table history add column if not exists baseline boolean not null default false;"),
+            List.of("alter table history add column if not exists attempts int not null default 1;")
+    );
+
+    private HistorySchema() {
+    }
+
+    /**
+     * Creates or upgrades the history table to the current schema version.
+     *
+     * @param connection the connection to use; its auto-commit mode is restored afterwards
+     * @throws SQLException if the schema cannot be created or upgraded
+     * @throws RuntimeException if the history table was written by a newer version of the tool
+     */
+    public static void ensure(Connection connection) throws SQLException {
+        int version;
+        try (Statement statement = connection.createStatement()) {
+            version = readVersion(statement);
+        }
+        checkSupported(version);
+        if (version == CURRENT_VERSION) {
+            log.debug("History schema is at version {}", CURRENT_VERSION);
+            return;
+        }
+        upgrade(connection);
+    }
+
+    private static void upgrade(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT pg_advisory_xact_lock(" + UPGRADE_LOCK_KEY + ")");
+            statement.execute(META_TABLE);
+
+            int version = readVersion(statement);
+            checkSupported(version);
+
+            for (int step = version; step < CURRENT_VERSION; step++) {
+                log.info("Upgrading history schema from version {} to {}", step, step + 1);
+                for (String sql : UPGRADES.get(step)) {
+                    statement.execute(sql);
+                }
+            }
+            if (version < CURRENT_VERSION) {
+                statement.execute("""
+                        insert into history_meta (id, schema_version) values (1, %d)
+                        on conflict (id) do update set schema_version = excluded.schema_version
+                        """.formatted(CURRENT_VERSION));
+            }
+
+            connection.commit();
+            log.debug("History schema is at version {}", CURRENT_VERSION);
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void checkSupported(int version) {
+        if (version > CURRENT_VERSION) {
+            log.error("History schema version {} is newer than the supported version {}", version, CURRENT_VERSION);
+            throw new RuntimeException("History schema version %d is newer than the supported version %d; upgrade the migration tool"
+                    .formatted(version, CURRENT_VERSION));
+        }
+    }
+
+    /**
+     * Returns the recorded schema version: {@code 0} for a new database, {@code 1} for a history table created before
+     * the meta table existed. Missing tables are detected with {@code to_regclass}, so the read never fails and
+     * never aborts a surrounding transaction.
+     */
+    private static int readVersion(Statement statement) throws SQLException {
+        if (tableExists(statement, "history_meta")) {
+            try (ResultSet resultSet = statement.executeQuery("select schema_version from history_meta where id = 1")) {
+                if (resultSet.next()) {
+                    return resultSet.getInt(1);
+                }
+            }
+        }
+        return tableExists(statement, "history") ? 1 : 0;
+    }
+
+    private static boolean tableExists(Statement statement, String table) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("select to_regclass('" + table + "') is not null")) {
+            return resultSet.next() && resultSet.getBoolean(1);
+        }
+    }
+}
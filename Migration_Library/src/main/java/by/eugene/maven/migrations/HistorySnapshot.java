@@ -0,0 +1,200 @@
+package by.eugene.maven.migrations;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory snapshot of the history table.
+ * <p>
+ * The snapshot is read with a single streaming {@code SELECT} and holds the applied versions in a sorted primitive
+ * {@code int[]} together with the recorded checksum of every applied file, so deciding which migrations are pending
+ * and validating applied files needs no further queries. It also aggregates the recorded execution metrics, which
+ * are used to predict the duration of pending work. A sorted array rather than a bit set keeps the snapshot
+ * compact for sparse, date-based version numbers. With a fetch size set, the PostgreSQL driver reads the rows
+ * through a cursor in chunks instead of materializing the whole result at once.
+ * </p>
+ * <p>
+ * A row written for a baseline migration stands for every version up to its own, so those versions count as
+ * applied even though they have no row of their own. A row with {@code success = false} records a migration whose
+ * last run failed; it is reported by {@link #failedVersions()} but does not count as applied, so the migration is
+ * pending again.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * HistorySnapshot history = HistorySnapshot.load(connection);
+ * List&lt;ParsedMigration&gt; pending = index.all().stream()
+ *         .filter(migration -&gt; !history.isApplied(migration.version()))
+ *         .toList();
+ * </pre>
+ */
+@Slf4j
+public final class HistorySnapshot {
+    private static final String HISTORY_QUERY =
+            "SELECT version, file, checksum, execution_ms, statement_count, success, baseline FROM history";
+    private static final int FETCH_SIZE = 1000;
+
+    private final int[] appliedVersions;
+    private final int[] failedVersions;
+    private final int baselineVersion;
+    private final Map<String, Long> checksums;
+    private final long measuredExecutionMs;
+    private final long measuredStatements;
+
+    private HistorySnapshot(int[] appliedVersions, int[] failedVersions, int baselineVersion,
+                            Map<String, Long> checksums, long measuredExecutionMs, long measuredStatements) {
+        this.appliedVersions = appliedVersions;
+        this.failedVersions = failedVersions;
+        this.baselineVersion = baselineVersion;
+        this.checksums = Collections.unmodifiableMap(checksums);
+        this.measuredExecutionMs = measuredExecutionMs;
+        this.measuredStatements = measuredStatements;
+    }
+
+    /**
+     * Reads the history table into a snapshot.
+     * <p>
+     * The query runs in a short read-only transaction when the connection is in auto-commit mode, because the
+     * driver only streams results with a cursor inside a transaction; the auto-commit mode is restored afterwards.
+     * </p>
+     *
+     * @param connection the connection to read the history table with
+     * @return the snapshot
+     * @throws SQLException if the history table cannot be read
+     */
+    public static HistorySnapshot load(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+
+        int[] versions = new int[64];
+        int count = 0;
+        List<Integer> failed = new ArrayList<>();
+        int baselineVersion = 0;
+        Map<String, Long> checksums = new HashMap<>();
+        long measuredExecutionMs = 0;
+        long measuredStatements = 0;
+        try (Statement statement = connection.createStatement()) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery(HISTORY_QUERY)) {
+                while (resultSet.next()) {
+                    int version = resultSet.getInt(1);
+                    String file = resultSet.getString(2);
+                    long checksum = resultSet.getLong(3);
+                    Long recorded = resultSet.wasNull() ? null : checksum;
+                    if (!resultSet.getBoolean(6) && !resultSet.wasNull()) {
+                        failed.add(version);
+                        continue;
+                    }
+
+                    if (count == versions.length) {
+                        versions = Arrays.copyOf(versions, count * 2);
+                    }
+                    versions[count++] = version;
+                    checksums.put(file, recorded);
+
+                    long executionMs = resultSet.getLong(4);
+                    boolean timed = !resultSet.wasNull();
+                    int statements = resultSet.getInt(5);
+                    if (timed && !resultSet.wasNull() && statements > 0) {
+                        measuredExecutionMs += executionMs;
+                        measuredStatements += statements;
+                    }
+                    if (resultSet.getBoolean(7)) {
+                        baselineVersion = Math.max(baselineVersion, version);
+                    }
+                }
+            }
+        } finally {
+            if (autoCommit) {
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+        }
+
+        int[] appliedVersions = Arrays.copyOf(versions, count);
+        Arrays.sort(appliedVersions);
+        int[] failedVersions = failed.stream().mapToInt(Integer::intValue).sorted().toArray();
+        HistorySnapshot snapshot = new HistorySnapshot(appliedVersions, failedVersions, baselineVersion, checksums,
+                measuredExecutionMs, measuredStatements);
+        log.info("Loaded history snapshot with {} applied migrations in {} ms; current version {}",
+                snapshot.size(), (System.nanoTime() - start) / 1_000_000, snapshot.currentVersion());
+        return snapshot;
+    }
+
+    /**
+     * Returns whether the migration with the given version has been applied.
+     *
+     * @param version the migration version
+     * @return {@code true} if the version is recorded in the history table or covered by an applied baseline
+     */
+    public boolean isApplied(int version) {
+        return version <= baselineVersion || Arrays.binarySearch(appliedVersions, version) >= 0;
+    }
+
+    /**
+     * Returns the version of the most recent applied baseline.
+     *
+     * @return the baseline version, or {@code 0} if no baseline has been applied
+     */
+    public int baselineVersion() {
+        return baselineVersion;
+    }
+
+    /**
+     * Returns the versions whose last migrate run failed and which have not been applied since.
+     *
+     * @return the failed versions in ascending order
+     */
+    public int[] failedVersions() {
+        return failedVersions.clone();
+    }
+
+    /**
+     * Returns the highest applied version.
+     *
+     * @return the highest applied version, or {@code 0} if no migration has been applied
+     */
+    public int currentVersion() {
+        return appliedVersions.length == 0 ? 0 : appliedVersions[appliedVersions.length - 1];
+    }
+
+    /**
+     * Returns the number of applied migrations.
+     *
+     * @return the number of applied migrations
+     */
+    public int size() {
+        return appliedVersions.length;
+    }
+
+    /**
+     * Returns the average execution time of a statement over all migrations recorded with execution metrics.
+     *
+     * @return the average milliseconds per statement, or {@code -1} if no migration was recorded with metrics
+     */
+    public double averageStatementMs() {
+        return measuredStatements == 0 ? -1 : (double) measuredExecutionMs / measuredStatements;
+    }
+
+    /**
+     * Returns the recorded checksum of every applied migration.
+     *
+     * @return an unmodifiable map of checksums by file name; {@code null} for migrations applied without a checksum
+     */
+    public Map<String, Long> checksums() {
+        return checksums;
+    }
+}
@@ -0,0 +1,170 @@
+package by.eugene.maven.migrations;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects history table changes in memory and writes them in bulk.
+ * <p>
+ * Applied and rolled back migrations are recorded while a transaction runs and written by {@link #flush(Connection)}
+ * on the same connection right before the transaction commits, so the history stays atomic with the executed SQL
+ * while the number of round trips no longer grows with the number of migrations: all deletions are sent as one
+ * {@code DELETE ... WHERE version = ANY(?)} and all insertions as multi-row {@code INSERT} statements of up to
+ * {@value #ROWS_PER_INSERT} rows. Deletions are written first, so a migration that is rolled back and applied again
+ * within one transaction ends up recorded once; the deletion also covers every inserted version, which replaces the
+ * row of an earlier failed attempt.
+ * </p>
+ * <p>
+ * A migration whose run failed is recorded by {@link #recordFailed(ParsedMigration)} with {@code success = false}
+ * and written in a transaction of its own after the run was rolled back.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * HistoryWriter history = new HistoryWriter();
+ * history.recordApplied(migration, metrics);
+ * history.flush(connection);
+ * connection.commit();
+ * </pre>
+ */
+@Slf4j
+public class HistoryWriter {
+    private static final int ROWS_PER_INSERT = 1000;
+    private static final String INSERT_PREFIX = "INSERT INTO history (version, file, timestamp, checksum, "
+            + "execution_ms, statement_count, rows_affected, attempts, success, baseline) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_VERSIONS = "DELETE FROM history WHERE version = ANY(?)";
+
+    private final Map<Integer, Entry> pendingInserts = new LinkedHashMap<>();
+    private final Set<Integer> pendingDeletes = new LinkedHashSet<>();
+
+    /**
+     * Records a migration that has been applied.
+     *
+     * @param migration the applied migration
+     * @param metrics   the execution metrics of the migration, or {@code null} if unknown
+     */
+    public void recordApplied(ParsedMigration migration, MigrationMetrics metrics) {
+        pendingInserts.put(migration.version(), new Entry(migration.version(), migration.fileName(),
+                migration.checksum(), metrics, Instant.now(), true, migration.isBaseline()));
+    }
+
+    /**
+     * Records a migration whose execution failed. The entry does not count as applied; it is replaced when the
+     * migration is applied later.
+     *
+     * @param migration the failed migration
+     */
+    public void recordFailed(ParsedMigration migration) {
+        pendingInserts.put(migration.version(), new Entry(migration.version(), migration.fileName(),
+                migration.checksum(), null, Instant.now(), false, migration.isBaseline()));
+    }
+
+    /**
+     * Records a migration that has been rolled back. A pending insertion of the same version is dropped instead.
+     *
+     * @param version the version of the rolled back migration
+     */
+    public void recordRolledBack(int version) {
+        if (pendingInserts.remove(version) == null) {
+            pendingDeletes.add(version);
+        }
+    }
+
+    /**
+     * Returns the number of recorded changes that have not been written yet.
+     *
+     * @return the number of pending changes
+     */
+    public int pendingCount() {
+        return pendingInserts.size() + pendingDeletes.size();
+    }
+
+    /**
+     * Writes the recorded changes and forgets them.
+     *
+     * @param connection the connection of the transaction the changes belong to
+     * @throws SQLException if the history table cannot be written; the changes are kept in that case
+     */
+    public void flush(Connection connection) throws SQLException {
+        if (pendingCount() == 0) {
+            return;
+        }
+        log.info("Writing history: {} recorded and {} rolled back migrations", pendingInserts.size(), pendingDeletes.size());
+
+        Set<Integer> deletes = new LinkedHashSet<>(pendingDeletes);
+        deletes.addAll(pendingInserts.keySet());
+        if (!deletes.isEmpty()) {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_VERSIONS)) {
+                Array versions = connection.createArrayOf("int4", deletes.toArray());
+                statement.setArray(1, versions);
+                statement.executeUpdate();
+                versions.free();
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(pendingInserts.values());
+        for (int from = 0; from < entries.size(); from += ROWS_PER_INSERT) {
+            insert(connection, entries.subList(from, Math.min(from + ROWS_PER_INSERT, entries.size())));
+        }
+        clear();
+    }
+
+    /**
+     * Forgets the recorded changes, for example after the transaction they belong to was rolled back.
+     */
+    public void clear() {
+        pendingInserts.clear();
+        pendingDeletes.clear();
+    }
+
+    private static void insert(Connection connection, List<Entry> entries) throws SQLException {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + entries.size() * (INSERT_ROW.length() + 2))
+                .append(INSERT_PREFIX);
+        for (int i = 0; i < entries.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(INSERT_ROW);
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            int parameter = 1;
+            for (Entry entry : entries) {
+                statement.setInt(parameter++, entry.version());
+                statement.setString(parameter++, entry.fileName());
+                statement.setTimestamp(parameter++, Timestamp.from(entry.appliedAt()));
+                statement.setLong(parameter++, entry.checksum());
+                MigrationMetrics metrics = entry.metrics();
+                if (metrics == null) {
+                    statement.setNull(parameter++, Types.BIGINT);
+                    statement.setNull(parameter++, Types.INTEGER);
+                    statement.setNull(parameter++, Types.BIGINT);
+                    statement.setInt(parameter++, 1);
+                } else {
+                    statement.setLong(parameter++, metrics.executionMs());
+                    statement.setInt(parameter++, metrics.statementCount());
+                    statement.setLong(parameter++, metrics.rowsAffected());
+                    statement.setInt(parameter++, metrics.attempts());
+                }
+                statement.setBoolean(parameter++, entry.success());
+                statement.setBoolean(parameter++, entry.baseline());
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    private record Entry(int version, String fileName, long checksum, MigrationMetrics metrics, Instant appliedAt,
+                         boolean success, boolean baseline) {
+    }
+}
@@ -0,0 +1,321 @@
+package by.eugene.maven.migrations;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor that merges runs of single-row literal inserts into multi-row inserts.
+ * <p>
+ * Legacy data migrations often consist of thousands of statements of the form
+ * {@code INSERT INTO t (a, b) VALUES (1, 'x')}. Consecutive inserts into the same table with the same column list
+ * and the same number of values are rewritten into one {@code INSERT INTO t (a, b) VALUES (1, 'x'), (2, 'y'), ...}
+ * of up to {@code maxRows} statements and about {@value ExecutionStrategy#MAX_QUERY_CHARS} characters, so the server parses
+ * and plans one statement per chunk instead of one per row. The rows keep their order, and the values are passed
+ * through as written, so the server still parses every literal.
+ * </p>
+ * <p>
+ * Only inserts that end with their {@code VALUES} list and whose rows consist of constants are merged: literals,
+ * typed literals such as {@code DATE '2024-01-01'}, casts such as {@code '1.5'::numeric(10, 2)}, {@code NULL},
+ * {@code DEFAULT}, {@code TRUE}, {@code FALSE}, keywords such as {@code CURRENT_TIMESTAMP} that are fixed for the
+ * transaction, and operators on them. Rows with a function call, a subquery or any other parenthesized expression
+ * are not merged, because a merged statement evaluates all its rows against one snapshot: a row such as
+ * {@code ((SELECT max(pos) + 1 FROM t))} would no longer see the rows inserted before it. Inserts with
+ * {@code RETURNING}, {@code ON CONFLICT}, {@code SELECT}, comments or dollar quotes, as well as every other
+ * statement, are passed through unchanged and end the current run.
+ * </p>
+ * <p>
+ * A merged statement fails as a whole where one of its rows would have failed, so the cursor is meant for
+ * transactional sections, where the failure rolls back the whole migration either way. Statement-level triggers fire
+ * once per merged statement instead of once per row.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * try (InsertCoalescingCursor cursor = new InsertCoalescingCursor(section.open(), 500)) {
+ *     cursor.forEachRemaining(statement::execute);
+ *     int merged = cursor.mergedStatements();
+ * }
+ * </pre>
+ */
+@Slf4j
+public class InsertCoalescingCursor implements StatementCursor {
+    private final StatementCursor cursor;
+    private final int maxRows;
+    private String pending;
+    private int mergedStatements;
+
+    /**
+     * Creates a cursor merging the inserts of the given cursor.
+     *
+     * @param cursor  the statements to read
+     * @param maxRows the maximum number of inserts merged into one
+     */
+    public InsertCoalescingCursor(StatementCursor cursor, int maxRows) {
+        this.cursor = cursor;
+        this.maxRows = maxRows;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pending != null || cursor.hasNext();
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String first = take();
+        InsertShape shape = maxRows > 1 ? InsertShape.of(first) : null;
+        if (shape == null) {
+            return first;
+        }
+
+        StringBuilder merged = null;
+        int rows = 1;
+        while (rows < maxRows && hasNext()) {
+            String candidate = take();
+            InsertShape next = InsertShape.of(candidate);
+            int length = merged == null ? first.length() : merged.length();
+            if (next == null || !next.matches(shape) || length >= ExecutionStrategy.MAX_QUERY_CHARS) {
+                pending = candidate;
+                break;
+            }
+            if (merged == null) {
+                merged = new StringBuilder(first);
+            }
+            merged.append(", ").append(candidate, next.valuesStart(), candidate.length());
+            rows++;
+        }
+
+        if (merged == null) {
+            return first;
+        }
+        mergedStatements += rows - 1;
+        log.debug("Merged {} inserts into {}", rows, shape.prefix());
+        return merged.toString();
+    }
+
+    /**
+     * Returns the number of statements that were merged into a preceding insert so far.
+     *
+     * @return the number of statements that were not sent on their own
+     */
+    public int mergedStatements() {
+        return mergedStatements;
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+
+    private String take() {
+        if (pending != null) {
+            String statement = pending;
+            pending = null;
+            return statement;
+        }
+        return cursor.next();
+    }
+
+    /**
+     * The mergeable form of an insert: everything up to {@code VALUES}, normalized, and the number of values per row.
+     *
+     * @param prefix      the statement up to and including {@code VALUES}, with whitespace collapsed and in upper case
+     * @param arity       the number of values in each row
+     * @param valuesStart the index of the first row in the statement
+     */
+    private record InsertShape(String prefix, int arity, int valuesStart) {
+
+        boolean matches(InsertShape other) {
+            return arity == other.arity && prefix.equals(other.prefix);
+        }
+
+        /**
+         * Returns the shape of a statement, or {@code null} if it is not a mergeable insert.
+         */
+        static InsertShape of(String sql) {
+            if (sql.length() < 20 || !sql.regionMatches(true, 0, "INSERT", 0, 6)) {
+                return null;
+            }
+            int values = indexOfValues(sql);
+            if (values < 0) {
+                return null;
+            }
+            String prefix = sql.substring(0, values + 6).replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+            if (!prefix.startsWith("INSERT INTO ") || prefix.contains("--") || prefix.contains("/*")
+                    || prefix.contains(" SELECT ") || prefix.contains("\"") || prefix.contains("'")) {
+                return null;
+            }
+
+            int position = skipWhitespace(sql, values + 6);
+            int valuesStart = position;
+            int arity = -1;
+            while (position < sql.length()) {
+                if (sql.charAt(position) != '(') {
+                    return null;
+                }
+                int[] row = scanRow(sql, position);
+                if (row == null || arity >= 0 && row[0] != arity) {
+                    return null;
+                }
+                arity = row[0];
+                position = skipWhitespace(sql, row[1]);
+                if (position == sql.length()) {
+                    return new InsertShape(prefix, arity, valuesStart);
+                }
+                if (sql.charAt(position) != ',') {
+                    return null;
+                }
+                position = skipWhitespace(sql, position + 1);
+            }
+            return null;
+        }
+
+        /**
+         * Scans a parenthesized row starting at {@code start} and returns the number of top-level values and the
+         * index after the closing parenthesis, or {@code null} if the row is not made of constants or contains
+         * anything that is not safely scanned: a parenthesis other than a type modifier, dollar quotes, comments or
+         * an unterminated literal.
+         */
+        private static int[] scanRow(String sql, int start) {
+            int depth = 0;
+            int arity = 1;
+            int position = start;
+            while (position < sql.length()) {
+                char c = sql.charAt(position);
+                switch (c) {
+                    case '(' -> {
+                        if (depth == 0) {
+                            depth++;
+                        } else {
+                            position = typeModifierEnd(sql, position);
+                            if (position < 0) {
+                                return null;
+                            }
+                        }
+                    }
+                    case '[' -> depth++;
+                    case ']' -> depth--;
+                    case ')' -> {
+                        if (--depth == 0) {
+                            return new int[]{arity, position + 1};
+                        }
+                    }
+                    case ',' -> {
+                        if (depth == 1) {
+                            arity++;
+                        }
+                    }
+                    case '\'', '"' -> {
+                        boolean escapes = c == '\'' && position > 0
+                                && (sql.charAt(position - 1) == 'E' || sql.charAt(position - 1) == 'e');
+                        position = skipQuoted(sql, position, c, escapes);
+                        if (position < 0) {
+                            return null;
+                        }
+                    }
+                    case '$' -> {
+                        return null;
+                    }
+                    case '-', '/' -> {
+                        if (position + 1 < sql.length()
+                                && sql.charAt(position + 1) == (c == '-' ? '-' : '*')) {
+                            return null;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+                position++;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the index of the closing parenthesis of a type modifier such as {@code ::numeric(10, 2)} or
+         * {@code ::character varying(20)} opened at {@code open}, or {@code -1} if the parenthesis opens anything
+         * else: a function call, a subquery or an expression.
+         */
+        private static int typeModifierEnd(String sql, int open) {
+            int typeStart = open;
+            while (typeStart > 0 && (Character.isWhitespace(sql.charAt(typeStart - 1))
+                    || Character.isLetterOrDigit(sql.charAt(typeStart - 1)) || sql.charAt(typeStart - 1) == '_')) {
+                typeStart--;
+            }
+            if (typeStart < 2 || !sql.startsWith("::", typeStart - 2) || sql.substring(typeStart, open).isBlank()) {
+                return -1;
+            }
+            for (int position = open + 1; position < sql.length(); position++) {
+                char c = sql.charAt(position);
+                if (c == ')') {
+                    return position;
+                }
+                if (!Character.isDigit(c) && c != ',' && !Character.isWhitespace(c)) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the index of the closing quote of the literal or identifier starting at {@code start}, or
+         * {@code -1} if it is not closed.
+         */
+        private static int skipQuoted(String sql, int start, char quote, boolean backslashEscapes) {
+            int position = start + 1;
+            while (position < sql.length()) {
+                char c = sql.charAt(position);
+                if (backslashEscapes && c == '\\') {
+                    position += 2;
+                    continue;
+                }
+                if (c == quote) {
+                    if (position + 1 < sql.length() && sql.charAt(position + 1) == quote) {
+                        position += 2;
+                        continue;
+                    }
+                    return position;
+                }
+                position++;
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the index of the {@code VALUES} keyword that follows the target of the insert, or {@code -1}.
+         */
+        private static int indexOfValues(String sql) {
+            int limit = Math.min(sql.length() - 6, 4096);
+            for (int i = 6; i <= limit; i++) {
+                char c = sql.charAt(i);
+                if (c == '\'' || c == '$' || c == ';') {
+                    return -1;
+                }
+                if ((c == 'V' || c == 'v') && sql.regionMatches(true, i, "VALUES", 0, 6)
+                        && isBoundary(sql, i - 1) && isBoundary(sql, i + 6)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean isBoundary(String sql, int index) {
+            if (index < 0 || index >= sql.length()) {
+                return true;
+            }
+            char c = sql.charAt(index);
+            return !Character.isLetterOrDigit(c) && c != '_' && c != '$';
+        }
+
+        private static int skipWhitespace(String sql, int position) {
+            while (position < sql.length() && Character.isWhitespace(sql.charAt(position))) {
+                position++;
+            }
+            return position;
+        }
+    }
+}
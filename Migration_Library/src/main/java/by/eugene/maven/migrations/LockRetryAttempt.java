@@ -0,0 +1,36 @@
+package by.eugene.maven.migrations;
+
+import java.time.Instant;
+
+/**
+ * One attempt of a migration or statement that was retried by the {@link LockRetryPolicy}.
+ * <p>
+ * Attempts are recorded in the {@link MigrationRunContext} of the run: every failed attempt, and the final successful
+ * attempt of an execution that needed more than one.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * for (LockRetryAttempt attempt : migrationManager.getRetryAttempts()) {
+ *     System.out.println(attempt.target() + " #" + attempt.attempt() + ": " + attempt.sqlState());
+ * }
+ * </pre>
+ *
+ * @param target     the retried migration file
+ * @param attempt    the number of the attempt, starting at {@code 1}
+ * @param startedAt  when the attempt started
+ * @param durationMs how long the attempt ran before it succeeded or failed, in milliseconds
+ * @param sqlState   the SQL state of the lock failure, or {@code null} if the attempt succeeded
+ * @param backoffMs  the time waited before the next attempt in milliseconds, {@code 0} for the last attempt
+ */
+public record LockRetryAttempt(String target, int attempt, Instant startedAt, long durationMs, String sqlState,
+                               long backoffMs) {
+    /**
+     * Returns whether the attempt succeeded.
+     *
+     * @return {@code true} if the attempt succeeded
+     */
+    public boolean succeeded() {
+        return sqlState == null;
+    }
+}
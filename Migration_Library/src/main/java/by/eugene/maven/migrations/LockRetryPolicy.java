@@ -0,0 +1,187 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.config.MigrationSettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs migrations under a short {@code lock_timeout} and retries them when they fail on a lock.
+ * <p>
+ * A DDL statement waiting for an {@code ACCESS EXCLUSIVE} lock behind a long-running query makes every later query
+ * on the table queue behind it. With a lock timeout the statement gives up quickly instead, releases its place in
+ * the lock queue and is retried after an exponential, jittered backoff. Failures with SQL state {@code 55P03}
+ * ({@code lock_not_available}) and {@code 40P01} ({@code deadlock_detected}) are retried until the retry budget of
+ * the execution is spent; any other failure is thrown at once.
+ * </p>
+ * <p>
+ * {@link MigrationExecutor} retries transactional migrations only: a migration is rolled back to a savepoint and
+ * retried as a whole, because a failed statement aborts its transaction. Non-transactional migrations run without
+ * the lock timeout and are never retried, because a {@code CREATE INDEX CONCURRENTLY} that fails leaves an invalid
+ * index behind and cannot simply be run again. Locks taken by earlier migrations of the same transaction stay held while the migration
+ * waits, so {@link TransactionMode#PER_MIGRATION} keeps the retried lock footprint smallest.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * LockRetryPolicy policy = LockRetryPolicy.from(settings);
+ * long[] counts = policy.execute("migration_v7.sql", run.retryAttempts(), () -&gt; executeSection(...));
+ * </pre>
+ */
+@Slf4j
+public final class LockRetryPolicy {
+    /**
+     * The policy that sets no lock timeout and never retries.
+     */
+    public static final LockRetryPolicy DISABLED = new LockRetryPolicy(null, Duration.ZERO);
+
+    private static final Set<String> RETRYABLE_STATES = Set.of("55P03", "40P01");
+    private static final long MIN_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final Duration lockTimeout;
+    private final Duration budget;
+
+    /**
+     * Creates a policy.
+     *
+     * @param lockTimeout the {@code lock_timeout} of the migration statements, or {@code null} to keep the server's
+     * @param budget      the maximum time from the first attempt of an execution after which it is not retried again
+     */
+    public LockRetryPolicy(Duration lockTimeout, Duration budget) {
+        this.lockTimeout = lockTimeout;
+        this.budget = budget;
+    }
+
+    /**
+     * Creates the policy configured by the {@code migration.retry.*} settings.
+     *
+     * @param settings the tuning settings
+     * @return the configured policy, {@link #DISABLED} if retries are disabled
+     */
+    public static LockRetryPolicy from(MigrationSettings settings) {
+        return settings.isRetryEnabled()
+                ? new LockRetryPolicy(settings.getRetryLockTimeout(), settings.getRetryBudget())
+                : DISABLED;
+    }
+
+    /**
+     * Returns whether failed executions are retried.
+     *
+     * @return {@code true} if the policy retries
+     */
+    public boolean isEnabled() {
+        return !budget.isZero() && !budget.isNegative();
+    }
+
+    /**
+     * Returns the lock timeout applied to migration statements.
+     *
+     * @return the lock timeout, or {@code null} if the server setting is kept
+     */
+    public Duration lockTimeout() {
+        return lockTimeout;
+    }
+
+    /**
+     * Runs an action, retrying it while it fails on a lock and the budget allows.
+     *
+     * @param target   the migration file or statement the action executes, used in attempt records and logs
+     * @param attempts the list the attempts are recorded in
+     * @param action   the action; it must leave no partial effect when it fails, so it can simply be run again
+     * @param <T>      the result type of the action
+     * @return the result of the first successful attempt
+     * @throws SQLException if the action fails with an error that is not retried, or the budget is spent
+     */
+    public <T> T execute(String target, List<LockRetryAttempt> attempts, Action<T> action) throws SQLException {
+        long deadline = System.nanoTime() + budget.toNanos();
+        long backoff = MIN_BACKOFF_MS;
+        for (int attempt = 1; ; attempt++) {
+            Instant startedAt = Instant.now();
+            long start = System.nanoTime();
+            try {
+                T result = action.run();
+                if (attempt > 1) {
+                    attempts.add(new LockRetryAttempt(target, attempt, startedAt, elapsedMs(start), null, 0));
+                    log.info("{} succeeded on attempt {}", target, attempt);
+                }
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                String sqlState = retryableState(e);
+                if (sqlState == null || !isEnabled()) {
+                    throw e;
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                long wait = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                if (wait >= remaining) {
+                    attempts.add(new LockRetryAttempt(target, attempt, startedAt, elapsedMs(start), sqlState, 0));
+                    log.error("{} failed on a lock (SQL state {}) after {} attempts; retry budget of {} s spent",
+                            target, sqlState, attempt, budget.toSeconds());
+                    throw e;
+                }
+                attempts.add(new LockRetryAttempt(target, attempt, startedAt, elapsedMs(start), sqlState, wait));
+                log.warn("{} failed on a lock (SQL state {}) on attempt {}; retrying in {} ms",
+                        target, sqlState, attempt, wait);
+                sleep(wait, e);
+                backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+            }
+        }
+    }
+
+    /**
+     * Returns the SQL state of a lock failure that can be retried, searching the causes and the chained exceptions of
+     * batch failures.
+     *
+     * @param failure the failure
+     * @return {@code 55P03} or {@code 40P01}, or {@code null} if the failure is not a lock failure
+     */
+    public static String retryableState(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException) {
+                for (SQLException next = sqlException; next != null; next = next.getNextException()) {
+                    if (RETRYABLE_STATES.contains(next.getSQLState())) {
+                        return next.getSQLState();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void sleep(long millis, Exception failure) throws SQLException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            SQLException interrupted = new SQLException("Interrupted while waiting to retry after a lock failure", e);
+            interrupted.addSuppressed(failure);
+            throw interrupted;
+        }
+    }
+
+    private static long elapsedMs(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * An execution that can be retried.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface Action<T> {
+        /**
+         * Runs the execution.
+         *
+         * @return the result
+         * @throws SQLException if a database error occurs
+         */
+        T run() throws SQLException;
+    }
+}
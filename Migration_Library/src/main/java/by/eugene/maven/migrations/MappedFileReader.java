@@ -0,0 +1,127 @@
+package by.eugene.maven.migrations;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Checksum;
+
+/**
+ * {@link Reader} over a UTF-8 file that is memory-mapped window by window.
+ * <p>
+ * The file is mapped with {@link FileChannel#map} in fixed-size windows and decoded directly into the caller's
+ * buffer, so reading a file of any size needs no heap beyond that buffer. Multi-byte characters that span two
+ * windows are handled by starting the next window at the first undecoded byte. An optional {@link Checksum} is
+ * updated with every byte of the file as the windows are mapped.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * try (Reader reader = new MappedFileReader(Path.of("seed.sql"), new CRC32C())) {
+ *     SqlStatementTokenizer tokenizer = new SqlStatementTokenizer(reader);
+ * }
+ * </pre>
+ */
+public class MappedFileReader extends Reader {
+    private static final long WINDOW_SIZE = 16L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final Checksum checksum;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long checksummedBytes;
+    private boolean endOfInput;
+
+    /**
+     * Opens the file for reading.
+     *
+     * @param file the file to read
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedFileReader(Path file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Opens the file for reading and updates the given checksum with its raw bytes.
+     *
+     * @param file     the file to read
+     * @param checksum the checksum to update, or {@code null}
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedFileReader(Path file, Checksum checksum) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.checksum = checksum;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (endOfInput) {
+            return -1;
+        }
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (true) {
+            if (window == null && !mapWindow(0)) {
+                endOfInput = true;
+                return -1;
+            }
+
+            boolean lastWindow = windowStart + window.limit() == size;
+            CoderResult result = decoder.decode(window, out, lastWindow);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (out.position() > off) {
+                return out.position() - off;
+            }
+            if (lastWindow) {
+                decoder.flush(out);
+                endOfInput = true;
+                return out.position() > off ? out.position() - off : -1;
+            }
+            mapWindow(windowStart + window.position());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private boolean mapWindow(long position) throws IOException {
+        if (position >= size) {
+            return false;
+        }
+
+        long length = Math.min(WINDOW_SIZE, size - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        windowStart = position;
+
+        if (checksum != null && position + length > checksummedBytes) {
+            ByteBuffer unchecked = window.duplicate();
+            unchecked.position((int) (checksummedBytes - position));
+            checksum.update(unchecked);
+            checksummedBytes = position + length;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,204 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.migrations.source.MigrationSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Digest of a complete set of migrations, used to detect that a database is already up to date without parsing
+ * the migration files or planning a run.
+ * <p>
+ * The digest is a SHA-256 hash over the version and checksum of every migration in ascending order, so it
+ * changes when a migration is added, removed, renumbered or edited. A successful migrate run stores the digest of the
+ * local migration set in the one-row {@code history_meta} table, and a rollback clears it. When the stored digest
+ * equals the local one, every local migration is applied and unchanged.
+ * </p>
+ * <p>
+ * {@link #scan(MigrationSource, int, MigrationParseCache)} computes the local digest from the raw files: each file
+ * is hashed like {@link MigrationFileReader#checksum(URL)} and only its header line is parsed, so no statement is
+ * tokenized. With a {@link MigrationParseCache}, a file whose size and modification time match its cache entry is
+ * not read at all; the version and checksum recorded in the entry are used instead, so large seed files are only
+ * hashed after they change.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * String local = MigrationDigest.scan(MigrationSource.of("migrations"), 4, MigrationParseCache.of(settings));
+ * boolean upToDate = local.equals(MigrationDigest.stored(connection));
+ * </pre>
+ */
+@Slf4j
+public final class MigrationDigest {
+
+    private MigrationDigest() {
+    }
+
+    /**
+     * Computes the digest of loaded migrations, including the baselines.
+     *
+     * @param index the loaded migrations
+     * @return the hex-encoded digest
+     */
+    public static String of(MigrationIndex index) {
+        return digest(Stream.concat(index.all().stream(), index.baselines().stream())
+                .map(migration -> new Fingerprint(migration.version(), migration.checksum()))
+                .toList());
+    }
+
+    /**
+     * Computes the digest of the migration files of a source without parsing their statements.
+     *
+     * @param source      the source of the migration files
+     * @param parallelism the number of files hashed concurrently; {@code 1} hashes the files serially
+     * @return the hex-encoded digest
+     * @throws RuntimeException if a file cannot be read or has an invalid header line
+     */
+    public static String scan(MigrationSource source, int parallelism) {
+        return scan(source, parallelism, null);
+    }
+
+    /**
+     * Computes the digest of the migration files of a source, taking the version and checksum of unchanged files
+     * from the parse cache.
+     *
+     * @param source      the source of the migration files
+     * @param parallelism the number of files hashed concurrently; {@code 1} hashes the files serially
+     * @param cache       the parse cache, or {@code null} to hash every file
+     * @return the hex-encoded digest
+     * @throws RuntimeException if a file cannot be read or has an invalid header line
+     */
+    public static String scan(MigrationSource source, int parallelism, MigrationParseCache cache) {
+        long start = System.nanoTime();
+        List<String> files = source.list();
+        List<Fingerprint> fingerprints;
+        if (parallelism > 1 && files.size() > 1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                fingerprints = pool.submit(() -> files.parallelStream()
+                        .map(file -> fingerprint(source, file, cache))
+                        .toList()).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while hashing migration files", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException runtimeException
+                        ? runtimeException
+                        : new RuntimeException("Error while hashing migration files", e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            fingerprints = files.stream().map(file -> fingerprint(source, file, cache)).toList();
+        }
+
+        String digest = digest(fingerprints);
+        log.debug("Computed digest of {} migration files in {} ms", files.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        return digest;
+    }
+
+    /**
+     * Reads the digest stored by the last successful migrate run.
+     *
+     * @param connection the connection to use
+     * @return the stored digest, or {@code null} if none is stored
+     * @throws SQLException if the meta table cannot be read
+     */
+    public static String stored(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT migration_digest FROM history_meta WHERE id = 1");
+             ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        }
+    }
+
+    /**
+     * Stores a digest, or clears the stored one, in the current transaction of the connection.
+     *
+     * @param connection the connection to use
+     * @param digest     the digest to store, or {@code null} to clear it
+     * @throws SQLException if the meta table cannot be updated
+     */
+    public static void store(Connection connection, String digest) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE history_meta SET migration_digest = ? WHERE id = 1")) {
+            statement.setString(1, digest);
+            statement.executeUpdate();
+        }
+    }
+
+    private static String digest(List<Fingerprint> fingerprints) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + Long.BYTES);
+        fingerprints.stream()
+                .sorted(Comparator.comparingInt(Fingerprint::version).thenComparingLong(Fingerprint::checksum))
+                .forEach(fingerprint -> {
+                    entry.clear().putInt(fingerprint.version()).putLong(fingerprint.checksum());
+                    sha256.update(entry.array());
+                });
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    /**
+     * Takes the fingerprint of a file from the parse cache, or reads the header line of the file for its version and
+     * hashes the whole file in the same pass.
+     */
+    private static Fingerprint fingerprint(MigrationSource source, String fileName, MigrationParseCache cache) {
+        URL url = source.resolve(fileName);
+        if (url == null) {
+            throw new RuntimeException("Migration file %s not found".formatted(fileName));
+        }
+        Fingerprint cached = cache == null ? null : cache.fingerprint(fileName, url);
+        if (cached != null) {
+            return cached;
+        }
+        CRC32C checksum = new CRC32C();
+        try (InputStream in = new CheckedInputStream(new BufferedInputStream(url.openStream()), checksum)) {
+            ByteArrayOutputStream headerLine = new ByteArrayOutputStream(64);
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                headerLine.write(b);
+            }
+            in.transferTo(OutputStream.nullOutputStream());
+
+            String line = headerLine.toString(StandardCharsets.UTF_8);
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            return new Fingerprint(MigrationHeader.parse(line, fileName).version(), checksum.getValue());
+        } catch (IOException e) {
+            log.error("Unable to read migration file: {}", fileName, e);
+            throw new RuntimeException("Unable to read migration file " + fileName, e);
+        }
+    }
+
+    record Fingerprint(int version, long checksum) {
+    }
+}
@@ -0,0 +1,152 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.exceptions.MigrationValidationException;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Execution directives declared in the header line of a migration file.
+ * <p>
+ * Directives choose how {@link MigrationExecutor} runs a migration:
+ * </p>
+ * <ul>
+ *   <li><strong>transactional=false:</strong> runs the statements one by one in auto-commit mode, outside of the
+ *   migration transaction. Required for statements such as {@code CREATE INDEX CONCURRENTLY} that PostgreSQL refuses
+ *   to run inside a transaction block.</li>
+ *   <li><strong>statement_timeout, lock_timeout:</strong> a duration such as {@code 30s}, {@code 500ms} or
+ *   {@code 5min}; a value without unit is in milliseconds. A {@code lock_timeout} replaces the lock timeout of the
+ *   {@link LockRetryPolicy}, which applies to transactional migrations only; {@code lock_timeout=0} disables it.</li>
+ *   <li><strong>maintenance_work_mem:</strong> a memory size such as {@code 2GB} or {@code 512MB}; a value without
+ *   unit is in kilobytes.</li>
+ *   <li><strong>parallel_workers:</strong> the number of parallel workers available to index builds, applied as
+ *   {@code max_parallel_maintenance_workers}.</li>
+ *   <li><strong>execution:</strong> the {@link ExecutionMode} used to send the statements, one of
+ *   {@code per_statement}, {@code batch}, {@code multi_statement} or {@code auto}; overrides the
+ *   {@code migration.execution.strategy} setting. Non-transactional migrations accept only {@code per_statement}
+ *   and {@code auto}.</li>
+ * </ul>
+ * <p>
+ * The settings are applied for the duration of the migration only: with {@code SET LOCAL} inside the migration
+ * transaction, or as session settings that are reset afterwards for non-transactional migrations. Values are
+ * validated when the migration file is loaded, so an invalid directive fails the load rather than the run.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * --migration 42 transactional=false maintenance_work_mem=2GB parallel_workers=4--
+ * --migration--
+ * CREATE INDEX CONCURRENTLY idx_orders_customer ON orders (customer_id);
+ * --rollback--
+ * DROP INDEX CONCURRENTLY idx_orders_customer;
+ * </pre>
+ *
+ * @param transactional whether the migration runs inside the migration transaction
+ * @param settings      the PostgreSQL settings to apply while the migration runs, by setting name
+ * @param execution     the execution mode of the migration, or {@code null} to use the configured default
+ */
+public record MigrationDirectives(boolean transactional, Map<String, String> settings, ExecutionMode execution) {
+    /**
+     * The directives of a migration whose header declares none.
+     */
+    public static final MigrationDirectives NONE = new MigrationDirectives(true, Map.of(), null);
+
+    private static final String TRANSACTIONAL = "transactional";
+    private static final String STATEMENT_TIMEOUT = "statement_timeout";
+    private static final String LOCK_TIMEOUT = "lock_timeout";
+    private static final String MAINTENANCE_WORK_MEM = "maintenance_work_mem";
+    private static final String PARALLEL_WORKERS = "parallel_workers";
+    private static final String EXECUTION = "execution";
+    private static final int MAX_PARALLEL_WORKERS = 1024;
+
+    private static final Set<String> DURATION_UNITS = Set.of("", "ms", "s", "min", "h", "d");
+    private static final Set<String> MEMORY_UNITS = Set.of("", "kB", "MB", "GB", "TB");
+
+    /**
+     * Creates new directives, defensively copying the settings.
+     */
+    public MigrationDirectives {
+        settings = Map.copyOf(settings);
+    }
+
+    /**
+     * Extracts and validates the directives from the header attributes of a migration.
+     *
+     * @param headers  the header attributes; keys that are not directives are ignored
+     * @param fileName the name of the migration file, used in error messages
+     * @return the directives
+     * @throws MigrationValidationException if a directive has an invalid value
+     */
+    public static MigrationDirectives from(Map<String, String> headers, String fileName) {
+        boolean transactional = true;
+        String value = headers.get(TRANSACTIONAL);
+        if (value != null) {
+            if (!value.equals("true") && !value.equals("false")) {
+                throw invalid(fileName, TRANSACTIONAL, value, "true or false");
+            }
+            transactional = Boolean.parseBoolean(value);
+        }
+
+        Map<String, String> settings = new LinkedHashMap<>();
+        putChecked(settings, headers, STATEMENT_TIMEOUT, DURATION_UNITS, "a duration such as 500ms, 30s or 5min", fileName);
+        putChecked(settings, headers, LOCK_TIMEOUT, DURATION_UNITS, "a duration such as 500ms, 30s or 5min", fileName);
+        putChecked(settings, headers, MAINTENANCE_WORK_MEM, MEMORY_UNITS, "a memory size such as 512MB or 2GB", fileName);
+
+        value = headers.get(PARALLEL_WORKERS);
+        if (value != null) {
+            int digits = countDigits(value);
+            if (digits == 0 || digits != value.length() || digits > 4 || Integer.parseInt(value) > MAX_PARALLEL_WORKERS) {
+                throw invalid(fileName, PARALLEL_WORKERS, value, "a number of workers between 0 and " + MAX_PARALLEL_WORKERS);
+            }
+            settings.put("max_parallel_maintenance_workers", value);
+        }
+
+        ExecutionMode execution = null;
+        value = headers.get(EXECUTION);
+        if (value != null) {
+            String expected = Arrays.toString(ExecutionMode.values()).toLowerCase(Locale.ROOT);
+            try {
+                execution = ExecutionMode.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw invalid(fileName, EXECUTION, value, "one of " + expected);
+            }
+            if (!transactional && execution != ExecutionMode.PER_STATEMENT && execution != ExecutionMode.AUTO) {
+                throw invalid(fileName, EXECUTION, value, "per_statement or auto for a non-transactional migration");
+            }
+        }
+
+        return transactional && settings.isEmpty() && execution == null
+                ? NONE
+                : new MigrationDirectives(transactional, settings, execution);
+    }
+
+    private static void putChecked(Map<String, String> settings, Map<String, String> headers, String directive,
+                                   Set<String> units, String expected, String fileName) {
+        String value = headers.get(directive);
+        if (value == null) {
+            return;
+        }
+        int digits = countDigits(value);
+        if (digits == 0 || digits > 12 || !units.contains(value.substring(digits))) {
+            throw invalid(fileName, directive, value, expected);
+        }
+        settings.put(directive, value);
+    }
+
+    private static int countDigits(String value) {
+        int digits = 0;
+        while (digits < value.length() && value.charAt(digits) >= '0' && value.charAt(digits) <= '9') {
+            digits++;
+        }
+        return digits;
+    }
+
+    private static MigrationValidationException invalid(String fileName, String directive, String value,
+                                                        String expected) {
+        return new MigrationValidationException("%s: invalid value '%s' for directive %s; expected %s"
+                .formatted(fileName, value, directive, expected));
+    }
+}
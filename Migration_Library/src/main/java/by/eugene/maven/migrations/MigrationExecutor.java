@@ -1,147 +1,224 @@
 package by.eugene.maven.migrations;
 
 import by.eugene.maven.config.ConnectionManager;
+import by.eugene.maven.config.MigrationSettings;
 import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
-import java.time.Instant;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 /**
  * Class responsible for executing database migrations and rollbacks.
  * <p>
- * This class handles the execution of SQL migrations and rollbacks based on migration files. It reads the SQL
- * commands from the specified files, executes them in batches, and records the migration history in the database.
+ * This class handles the execution of SQL migrations and rollbacks based on parsed migration files. It executes
+ * the SQL commands of a {@link ParsedMigration} in batches and records the migration history in the database.
+ * Every call runs on the connection of the caller's {@link MigrationRunContext}, which is never closed or replaced
+ * by the executor. History changes are collected in the context and written in bulk by
+ * {@link MigrationRunContext#commit()}, so they stay atomic with the executed SQL.
+ * Statements are streamed from their {@link MigrationSection} and sent with the {@link ExecutionStrategy} of the
+ * migration, in batches or queries of at most {@link MigrationSettings#getBatchSize()} statements, so the memory
+ * needed does not depend on the migration size.
+ * </p>
+ * <p>
+ * The {@link MigrationDirectives} declared in the header of a migration are honoured: their settings are applied
+ * with {@code SET LOCAL} for the duration of the migration, and a migration declared with
+ * {@code transactional=false} runs statement by statement in auto-commit mode with session settings that are reset
+ * afterwards; its history entry is written immediately, together with the pending entries of the migrations
+ * committed before it.
+ * </p>
+ * <p>
+ * Transactional migrations run under the lock timeout of the {@link LockRetryPolicy} configured by the settings and
+ * are retried when they fail on a lock or a deadlock; the number of attempts is part of the recorded
+ * {@link MigrationMetrics}.
+ * </p>
+ * <p>
+ * {@link CopyBlock Copy blocks} in a section are loaded with {@code COPY ... FROM STDIN}: the raw bytes of their
+ * inline or side-car data are streamed from the file into the connection, in file order with the statements around
+ * them. Every copy block counts as one statement and its copied rows as affected rows.
  * </p>
  *
  * <p><b>Usage:</b></p>
  * <pre>
  * MigrationExecutor executor = new MigrationExecutor(connectionManager);
- * executor.executeMigration("migration_v1.sql");
- * executor.executeRollback("rollback_v1.sql");
+ * ParsedMigration migration = MigrationFileReader.readMigration("migrations/migration_v1.sql");
+ * try (MigrationRunContext run = MigrationRunContext.open(connectionManager)) {
+ *     executor.executeMigration(run, migration);
+ *     run.commit();
+ * }
  * </pre>
  */
 @Slf4j
 public class MigrationExecutor {
+    private static final String LOCK_TIMEOUT = "lock_timeout";
+
     private final ConnectionManager connectionManager;
+    private final MigrationSettings settings;
+    private final LockRetryPolicy retryPolicy;
 
     /**
-     * Constructor for the MigrationExecutor.
+     * Constructor for the MigrationExecutor using the default settings.
      *
      * @param connectionManager the {@link ConnectionManager} instance for managing database connections
      */
     public MigrationExecutor(ConnectionManager connectionManager) {
+        this(connectionManager, MigrationSettings.defaults());
+    }
+
+    /**
+     * Constructor for the MigrationExecutor.
+     *
+     * @param connectionManager the {@link ConnectionManager} instance for managing database connections
+     * @param settings          the tuning settings, such as the batch size
+     */
+    public MigrationExecutor(ConnectionManager connectionManager, MigrationSettings settings) {
         this.connectionManager = connectionManager;
+        this.settings = settings;
+        this.retryPolicy = LockRetryPolicy.from(settings);
         log.info("MigrationExecutor initialized with connection manager: {}", connectionManager);
     }
 
     /**
-     * Executes a migration by applying the SQL commands from the provided migration file.
+     * Executes a migration by applying its migration SQL commands.
      * <p>
-     * This method reads the SQL commands from the specified migration file, executes them in a batch, and then
-     * saves the migration version and filename to the history table.
+     * This method executes the migration section of the parsed migration in a batch, and then
+     * records the migration version and filename for the history table. Inside a transaction the history entry
+     * is written by {@link MigrationRunContext#commit()}; in auto-commit mode it is written immediately.
      * </p>
      *
-     * @param fileName the name of the migration file (must have a .sql extension)
+     * @param run       the context of the run the migration belongs to
+     * @param migration the parsed migration to apply
      * @throws SQLException if a database error occurs while executing the migration or saving the history
-     * @throws RuntimeException if the file does not have a .sql extension
      */
-    public void executeMigration(String fileName) throws SQLException {
+    public void executeMigration(MigrationRunContext run, ParsedMigration migration) throws SQLException {
+        String fileName = migration.fileName();
         log.info("Starting migration for file: {}", fileName);
 
-        if (!fileName.endsWith(".sql")) {
-            log.error("Invalid file extension: {}; only .sql files are supported.", fileName);
-            throw new RuntimeException("File with wrong extension provided: %s; only .sql file extension supports ".formatted(fileName));
-        }
-
-        log.debug("Attempting to establish a database connection.");
-        List<String> sqlCommands = MigrationFileReader.readMigrationsFromFile(fileName);
+        MigrationSection sqlCommands = migration.upStatements();
 
-        log.info("Read {} SQL commands from migration file: {}", sqlCommands.size(), fileName);
-        executeSql(sqlCommands);
-
-        log.info("Saving migration history for file: {}", fileName);
-        saveMigration(MigrationFileReader.readMigrationVersion(fileName), fileName);
+        log.info("Executing {} SQL commands from migration file: {}", sqlCommands.size(), fileName);
+        execute(run, fileName, sqlCommands, migration.directives(),
+                metrics -> run.history().recordApplied(migration, metrics));
         log.info("Migration for file {} executed successfully", fileName);
     }
 
     /**
-     * Executes a rollback by applying the SQL commands from the provided rollback file.
+     * Executes a rollback by applying its rollback SQL commands.
      * <p>
-     * This method reads the SQL commands from the specified rollback file, executes them in a batch, and then
-     * removes the migration from the history table to reverse the applied migration.
+     * This method executes the rollback section of the parsed migration in a batch, and then
+     * records the removal of the migration from the history table to reverse the applied migration.
      * </p>
      *
-     * @param fileName the name of the rollback file (must have a .sql extension)
+     * @param run       the context of the run the rollback belongs to
+     * @param migration the parsed migration to roll back
      * @throws SQLException if a database error occurs while executing the rollback or updating the history table
-     * @throws RuntimeException if the file does not have a .sql extension
      */
-    public void executeRollback(String fileName) throws SQLException {
+    public void executeRollback(MigrationRunContext run, ParsedMigration migration) throws SQLException {
+        String fileName = migration.fileName();
         log.info("Starting rollback for file: {}", fileName);
 
-        if (!fileName.endsWith(".sql")) {
-            log.error("Invalid file extension: {}; only .sql files are supported.", fileName);
-            throw new RuntimeException("File with wrong extension provided: %s; only .sql file extension supports ".formatted(fileName));
-        }
-
-        List<String> sqlCommands = MigrationFileReader.readRollbacksFromFile(fileName);
+        MigrationSection sqlCommands = migration.downStatements();
 
-        log.info("Read {} SQL commands from rollback file: {}", sqlCommands.size(), fileName);
-        executeSql(sqlCommands);
-
-        log.info("Aborting migration history for file: {}", fileName);
-        abortMigration(fileName);
+        log.info("Executing {} SQL commands from rollback file: {}", sqlCommands.size(), fileName);
+        execute(run, fileName, sqlCommands, migration.directives(),
+                metrics -> run.history().recordRolledBack(migration.version()));
         log.info("Rollback for file {} executed successfully", fileName);
     }
 
     /**
-     * Saves the migration version and file name to the history table in the database.
+     * Executes a section and records its history change.
      * <p>
-     * This method records the migration version and the associated migration file, along with the timestamp of
-     * when the migration was executed, to ensure proper tracking of applied migrations.
+     * A non-transactional section on a connection inside a transaction first writes the pending history and commits
+     * the transaction, then runs in auto-commit mode; the previous auto-commit mode is restored afterwards. Whenever
+     * the section ran in auto-commit mode, its history change is written immediately.
      * </p>
-     *
-     * @param version the version of the migration
-     * @param migrationFile the name of the migration file
-     * @throws SQLException if a database error occurs while saving the migration
      */
-    public void saveMigration(int version, String migrationFile) throws SQLException {
-        log.info("Recording migration history: Version {} for file {}", version, migrationFile);
-
-        try (Connection connection = connectionManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement("INSERT INTO history VALUES (?, ?, ?)")) {
-
-            statement.setInt(1, version);
-            statement.setString(2, migrationFile);
-            statement.setTimestamp(3, Timestamp.from(Instant.now()));
-            statement.execute();
-            log.info("Migration history saved successfully for file: {}", migrationFile);
+    private void execute(MigrationRunContext run, String fileName, MigrationSection sqlCommands,
+                         MigrationDirectives directives, Consumer<MigrationMetrics> recordHistory) throws SQLException {
+        Connection connection = run.connection();
+        boolean leaveTransaction = !directives.transactional() && !connection.getAutoCommit();
+        if (leaveTransaction) {
+            log.info("Running non-transactional migration in auto-commit mode; committing pending changes first");
+            run.commit();
+            connection.setAutoCommit(true);
+        }
 
-        } catch (SQLException e) {
-            log.error("Error while saving migration history for file: {}", migrationFile, e);
-            throw e;
+        try {
+            recordHistory.accept(executeSql(run, fileName, sqlCommands, directives));
+            if (connection.getAutoCommit()) {
+                run.history().flush(connection);
+            }
+        } finally {
+            if (leaveTransaction) {
+                connection.setAutoCommit(false);
+            }
         }
     }
 
     /**
-     * Executes the SQL commands in the provided list.
+     * Executes the SQL commands of the provided section with the given directives.
+     * <p>
+     * The statements are sent with the execution mode declared by the migration or, without one, the configured
+     * mode, resolved to a strategy for the section by {@link ExecutionMode#resolve}. Non-transactional sections are
+     * executed one statement at a time, because PostgreSQL runs a batch as one implicit transaction block.
+     * Directive settings are applied with {@code SET LOCAL} inside a transaction and as session settings in
+     * auto-commit mode.
+     * </p>
+     * <p>
+     * Inside a transaction, lock failures are retried according to the {@link LockRetryPolicy}, whose lock timeout is
+     * applied like a directive setting unless the migration declares its own {@code lock_timeout}; the section runs
+     * in a savepoint and is retried as a whole. Sections in auto-commit mode get neither the lock timeout nor
+     * retries: a {@code CREATE INDEX CONCURRENTLY} that times out leaves an invalid index behind, so running it again
+     * fails with a duplicate name instead of succeeding.
+     * </p>
+     * <p>
+     * Inside a transaction, runs of single-row inserts are merged into multi-row inserts by an
+     * {@link InsertCoalescingCursor} unless disabled by {@code migration.insert.coalesce}; the executed statement
+     * count of the metrics still counts every insert of the file.
+     * </p>
      *
-     * @param sqlCommands the list of SQL commands to execute
-     * @throws SQLException if a database error occurs while executing the commands
+     * @param run         the context of the run, which records the retried attempts
+     * @param fileName    the name of the migration file, used in attempt records
+     * @param sqlCommands the section whose SQL commands to execute
+     * @param directives  the execution directives of the migration
+     * @return the execution metrics of the section
+     * @throws RuntimeException if a database error occurs while executing the commands
      */
-    private void executeSql(List<String> sqlCommands) {
-        log.debug("Executing SQL batch commands...");
+    private MigrationMetrics executeSql(MigrationRunContext run, String fileName, MigrationSection sqlCommands,
+                                        MigrationDirectives directives) {
+        long start = System.nanoTime();
+        Connection connection = run.connection();
+        List<LockRetryAttempt> attempts = run.retryAttempts();
+        int recordedBefore = attempts.size();
 
-        try (Connection connection = connectionManager.getConnection();
-             Statement statement = connection.createStatement()) {
+        try {
+            ExecutionStrategy strategy = (directives.execution() == null
+                    ? settings.getExecutionMode()
+                    : directives.execution()).resolve(sqlCommands, directives);
+            log.debug("Executing {} SQL commands with strategy {}", sqlCommands.size(), strategy);
 
-            for (String sql : sqlCommands) {
-                log.debug("Adding SQL command to batch: {}", sql);
-                statement.addBatch(sql);
+            long[] counts;
+            if (connection.getAutoCommit()) {
+                counts = executeStatements(connection, sqlCommands, strategy, directives.settings(), false,
+                        ExecutionStrategy.StatementRunner.DIRECT, block -> copy(run, fileName, block));
+            } else {
+                Map<String, String> sessionSettings = sessionSettings(directives);
+                counts = retryPolicy.execute(fileName, attempts, () -> executeInSavepoint(run, fileName, sqlCommands,
+                        strategy, sessionSettings));
             }
 
-            statement.executeBatch();
-            log.info("SQL batch execution completed successfully");
+            int lockFailures = (int) attempts.subList(recordedBefore, attempts.size()).stream()
+                    .filter(attempt -> !attempt.succeeded())
+                    .count();
+            return new MigrationMetrics((System.nanoTime() - start) / 1_000_000, (int) counts[0], counts[1],
+                    1 + lockFailures);
 
         } catch (SQLException e) {
             log.error("Error while executing SQL commands in batch", e);
@@ -150,24 +227,178 @@ public class MigrationExecutor {
     }
 
     /**
-     * Removes the migration record from the history table to undo the applied migration.
-     *
-     * @param fileName the name of the migration file to remove from history
-     * @throws SQLException if a database error occurs while deleting the migration record
+     * Executes a transactional section in a savepoint when lock failures are retried, so a failed attempt can be
+     * rolled back without aborting the transaction of the run.
+     */
+    private long[] executeInSavepoint(MigrationRunContext run, String fileName, MigrationSection sqlCommands,
+                                      ExecutionStrategy strategy, Map<String, String> sessionSettings)
+            throws SQLException {
+        Connection connection = run.connection();
+        CopyLoader copies = block -> copy(run, fileName, block);
+        if (!retryPolicy.isEnabled()) {
+            return executeStatements(connection, sqlCommands, strategy, sessionSettings, true,
+                    ExecutionStrategy.StatementRunner.DIRECT, copies);
+        }
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+            long[] counts = executeStatements(connection, sqlCommands, strategy, sessionSettings, true,
+                    ExecutionStrategy.StatementRunner.DIRECT, copies);
+            connection.releaseSavepoint(savepoint);
+            return counts;
+        } catch (SQLException | RuntimeException e) {
+            try {
+                connection.rollback(savepoint);
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Executes the statements of a section with the strategy, interrupting it at every {@link CopyBlock} to load the
+     * block's data, so statements and copies run in file order. Inside a transaction, runs of inserts are merged
+     * first, because a merged insert fails exactly when the whole transaction would.
      */
-    private void abortMigration(String fileName) throws SQLException {
-        log.info("Removing migration history for file: {}", fileName);
+    private long[] executeStatements(Connection connection, MigrationSection sqlCommands, ExecutionStrategy strategy,
+                                     Map<String, String> sessionSettings, boolean local,
+                                     ExecutionStrategy.StatementRunner runner, CopyLoader copies) throws SQLException {
+        InsertCoalescingCursor inserts = local && settings.isInsertCoalescing()
+                ? new InsertCoalescingCursor(sqlCommands.open(), settings.getBatchSize())
+                : null;
+        try (Statement statement = connection.createStatement();
+             CopySplittingCursor cursor = new CopySplittingCursor(inserts != null ? inserts : sqlCommands.open())) {
+            applySettings(statement, sessionSettings, local);
+            long executed = 0;
+            long rowsAffected = 0;
+            while (true) {
+                if (cursor.hasNext()) {
+                    long[] counts = strategy.execute(statement, cursor, settings.getBatchSize(), runner);
+                    executed += counts[0];
+                    rowsAffected += counts[1];
+                }
+                String block = cursor.nextCopy();
+                if (block == null) {
+                    break;
+                }
+                rowsAffected += copies.load(block);
+                executed++;
+            }
+            if (inserts != null) {
+                executed += inserts.mergedStatements();
+            }
+            resetSettings(statement, sessionSettings, local);
+            return new long[]{executed, rowsAffected};
+        }
+    }
 
-        try (Connection connection = connectionManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement("DELETE from history WHERE file = ?")) {
+    /**
+     * Streams the data of a copy block from the migration or side-car file into the table.
+     */
+    private static long copy(MigrationRunContext run, String fileName, String block) throws SQLException {
+        CopyBlock copyBlock = CopyBlock.parse(block, fileName);
+        long start = System.nanoTime();
+        try (InputStream data = copyBlock.openData(run.resolve(fileName))) {
+            long rows = run.connection().unwrap(PGConnection.class).getCopyAPI().copyIn(copyBlock.command(), data);
+            log.info("Copied {} rows into {} in {} ms", rows, copyBlock.table(), (System.nanoTime() - start) / 1_000_000);
+            return rows;
+        } catch (IOException e) {
+            log.error("Unable to read the data of {} in {}", copyBlock.marker(), fileName, e);
+            throw new SQLException("Unable to read copy data of %s in %s".formatted(copyBlock.table(), fileName), e);
+        }
+    }
+
+    /**
+     * Returns the settings of the directives of a transactional section, completed with the lock timeout of the retry
+     * policy.
+     */
+    private Map<String, String> sessionSettings(MigrationDirectives directives) {
+        Duration lockTimeout = retryPolicy.lockTimeout();
+        if (lockTimeout == null || directives.settings().containsKey(LOCK_TIMEOUT)) {
+            return directives.settings();
+        }
+        Map<String, String> sessionSettings = new LinkedHashMap<>(directives.settings());
+        sessionSettings.put(LOCK_TIMEOUT, lockTimeout.toMillis() + "ms");
+        return sessionSettings;
+    }
 
-            statement.setString(1, fileName);
-            statement.execute();
-            log.info("Migration history removed successfully for file: {}", fileName);
+    /**
+     * Applies the settings of a migration: with {@code SET LOCAL} inside a transaction, as session settings
+     * otherwise. Values are validated by {@link MigrationDirectives} when the migration is loaded.
+     */
+    private static void applySettings(Statement statement, Map<String, String> sessionSettings, boolean local)
+            throws SQLException {
+        String scope = local ? "SET LOCAL " : "SET ";
+        for (Map.Entry<String, String> setting : sessionSettings.entrySet()) {
+            log.debug("Applying {}{} = '{}'", scope, setting.getKey(), setting.getValue());
+            statement.execute(scope + setting.getKey() + " = '" + setting.getValue() + "'");
+        }
+    }
 
-        } catch (SQLException e) {
-            log.error("Error while removing migration history for file: {}", fileName, e);
-            throw e;
+    /**
+     * Loads the data of one copy block and returns the number of copied rows.
+     */
+    @FunctionalInterface
+    private interface CopyLoader {
+        long load(String block) throws SQLException;
+    }
+
+    /**
+     * Cursor over the statements of a section that ends before every copy block; {@link #nextCopy()} takes the
+     * block and lets the cursor continue with the statements after it.
+     */
+    private static final class CopySplittingCursor implements StatementCursor {
+        private final StatementCursor cursor;
+        private String next;
+
+        private CopySplittingCursor(StatementCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && cursor.hasNext()) {
+                next = cursor.next();
+            }
+            return next != null && !CopyBlock.isCopy(next);
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = null;
+            return result;
+        }
+
+        /**
+         * Returns the copy block the cursor stopped at, or {@code null} at the end of the section.
+         */
+        private String nextCopy() {
+            if (next == null && cursor.hasNext()) {
+                next = cursor.next();
+            }
+            String block = next;
+            next = null;
+            return block;
+        }
+
+        @Override
+        public void close() {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Restores the settings changed by {@link #applySettings}, so they do not leak into the following migrations
+     * that share the transaction or the session.
+     */
+    private static void resetSettings(Statement statement, Map<String, String> sessionSettings, boolean local)
+            throws SQLException {
+        for (String name : sessionSettings.keySet()) {
+            statement.execute(local ? "SET LOCAL " + name + " TO DEFAULT" : "RESET " + name);
         }
     }
 }
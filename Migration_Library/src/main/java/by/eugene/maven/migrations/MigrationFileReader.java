@@ -1,40 +1,215 @@
 package by.eugene.maven.migrations;
 
 
+import by.eugene.maven.config.MigrationSettings;
+import by.eugene.maven.exceptions.MigrationValidationException;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 
 /**
  * Utility class for reading migration and rollback SQL commands from migration files.
  * <p>
- * This class provides methods to read SQL commands from files that define database migrations and rollbacks,
- * separated by delimiters. It also extracts migration versions from the files.
+ * This class reads a migration file once and turns it into an immutable {@link ParsedMigration} holding the
+ * migration version, the SQL commands of both sections, the header metadata and a checksum of the file content.
+ * The sections are separated by the {@code --migration--} and {@code --rollback--} delimiters and are split into
+ * statements by the {@link SqlStatementTokenizer}, so semicolons inside literals, dollar-quoted bodies and comments
+ * are handled correctly. The header line is parsed by {@link MigrationHeader} and may declare execution directives
+ * (see {@link MigrationDirectives}), which are validated while the file is read. Sections may contain
+ * {@link CopyBlock copy blocks}, which are validated as well; their inline data is skipped and read again only when
+ * the block is executed.
+ * </p>
+ * <p>
+ * Files on the filesystem that are larger than the streaming threshold are memory-mapped instead of being read
+ * into memory; their statements are only counted while parsing and are streamed again from the mapped file when
+ * the migration is executed (see {@link MigrationSection}).
+ * </p>
+ * <p>
+ * The static methods always parse the file. An instance created from {@link MigrationSettings} additionally
+ * consults the {@link MigrationParseCache} when a cache directory is configured, so unchanged files are not
+ * parsed again on the next start.
  * </p>
  *
  * <p><b>Usage:</b></p>
  * <pre>
- * List<String> migrations = MigrationFileReader.readMigrationsFromFile("migration_v1.sql");
- * List<String> rollbacks = MigrationFileReader.readRollbacksFromFile("rollback_v1.sql");
- * int version = MigrationFileReader.readMigrationVersion("migration_v1.sql");
+ * ParsedMigration migration = new MigrationFileReader(settings).read("migrations/migration_v1.sql");
+ * MigrationSection migrations = migration.upStatements();
+ * MigrationSection rollbacks = migration.downStatements();
+ * int version = migration.version();
  * </pre>
  */
 @Slf4j
 public class MigrationFileReader {
-    private static final String MIGRATION_DELIMITER = "--migration--";
-    private static final String ROLLBACK_DELIMITER = "--rollback--";
+    static final String MIGRATION_DELIMITER = "--migration--";
+    static final String ROLLBACK_DELIMITER = "--rollback--";
+    static final Set<String> SECTION_DELIMITERS = Set.of(MIGRATION_DELIMITER, ROLLBACK_DELIMITER);
+    private static final String SQL_EXTENSION = ".sql";
+
+    private final long streamingThreshold;
+    private final MigrationParseCache cache;
+
+    /**
+     * Creates a reader that uses the streaming threshold and parse cache directory of the given settings.
+     *
+     * @param settings the tuning settings
+     */
+    public MigrationFileReader(MigrationSettings settings) {
+        this.streamingThreshold = settings.getStreamingThreshold();
+        this.cache = MigrationParseCache.of(settings);
+    }
+
+    /**
+     * Returns the parse cache of the reader.
+     *
+     * @return the parse cache, or {@code null} if no cache directory is configured
+     */
+    MigrationParseCache parseCache() {
+        return cache;
+    }
+
+    /**
+     * Reads a migration file from the classpath, taking it from the parse cache when the cached entry is still valid.
+     *
+     * @param filePath the path to the migration file (must be in the classpath and have a .sql extension)
+     * @return the parsed migration
+     * @throws RuntimeException if the file cannot be read, has a wrong extension or has no migration version
+     */
+    public ParsedMigration read(String filePath) {
+        return read(filePath, MigrationFileReader.class.getClassLoader().getResource(filePath));
+    }
+
+    /**
+     * Reads a migration file from the given location, taking it from the parse cache when the cached entry is
+     * still valid.
+     *
+     * @param fileName the name of the migration file recorded in the history table
+     * @param url      the location of the file content, or {@code null} if the file does not exist
+     * @return the parsed migration
+     * @throws RuntimeException if the file cannot be read, has a wrong extension or has no migration version
+     */
+    public ParsedMigration read(String fileName, URL url) {
+        if (cache == null || url == null) {
+            return readMigration(fileName, url, streamingThreshold);
+        }
+        return cache.get(fileName, url, () -> readMigration(fileName, url, streamingThreshold));
+    }
+
+    /**
+     * Reads and parses a migration file in a single pass, using the default streaming threshold.
+     *
+     * @param filePath the path to the migration file (must be in the classpath and have a .sql extension)
+     * @return the parsed migration
+     * @throws RuntimeException if the file cannot be read, has a wrong extension or has no migration version
+     * @see #readMigration(String, long)
+     */
+    public static ParsedMigration readMigration(String filePath) {
+        return readMigration(filePath, MigrationSettings.DEFAULT_STREAMING_THRESHOLD);
+    }
+
+    /**
+     * Reads and parses a migration file in a single pass.
+     * <p>
+     * The file is opened once and streamed through the {@link SqlStatementTokenizer}; the header line, the migration
+     * section and the rollback section are parsed from the same stream, and the CRC32C checksum is computed over the
+     * raw bytes while they are read. Files on the filesystem of at least {@code streamingThreshold} bytes are
+     * memory-mapped and their statements are not kept in memory.
+     * </p>
+     *
+     * @param filePath           the path to the migration file (must be in the classpath and have a .sql extension)
+     * @param streamingThreshold the file size in bytes from which the file is streamed instead of held in memory
+     * @return the parsed migration
+     * @throws RuntimeException if the file cannot be read, has a wrong extension or has no migration version
+     */
+    public static ParsedMigration readMigration(String filePath, long streamingThreshold) {
+        return readMigration(filePath, MigrationFileReader.class.getClassLoader().getResource(filePath),
+                streamingThreshold);
+    }
+
+    /**
+     * Reads and parses a migration file from the given location in a single pass.
+     *
+     * @param filePath           the name of the migration file recorded in the history table
+     * @param url                the location of the file content, or {@code null} if the file does not exist
+     * @param streamingThreshold the file size in bytes from which the file is streamed instead of held in memory
+     * @return the parsed migration
+     * @throws RuntimeException if the file cannot be read, has a wrong extension or has no migration version
+     * @see #readMigration(String, long)
+     */
+    public static ParsedMigration readMigration(String filePath, URL url, long streamingThreshold) {
+        log.info("Reading migration file: {}", filePath);
+
+        if (!filePath.endsWith(SQL_EXTENSION)) {
+            log.error("Invalid file extension: {}; only .sql files are supported.", filePath);
+            throw new RuntimeException("File with wrong extension provided: %s; only .sql file extension supports ".formatted(filePath));
+        }
+
+        try {
+            if (url == null) {
+                log.error("File not found: {}", filePath);
+                throw new IOException("File %s not found".formatted(filePath));
+            }
+
+            Path file = "file".equals(url.getProtocol()) ? Path.of(url.toURI()) : null;
+            if (file != null && Files.size(file) >= streamingThreshold) {
+                log.info("Memory-mapping large migration file {} ({} bytes)", filePath, Files.size(file));
+                CRC32C checksum = new CRC32C();
+                try (Reader reader = new MappedFileReader(file, checksum)) {
+                    return parse(filePath, new BufferedReader(reader), checksum, file);
+                }
+            }
+
+            try (InputStream inputStream = url.openStream()) {
+                CRC32C checksum = new CRC32C();
+                return parse(filePath, new BufferedReader(new InputStreamReader(
+                        new CheckedInputStream(inputStream, checksum), StandardCharsets.UTF_8)), checksum, null);
+            }
+
+        } catch (IOException | URISyntaxException e) {
+            log.error("Error reading or parsing file: {}", filePath, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Computes the CRC32C checksum of the raw content of a migration file without parsing it.
+     * <p>
+     * The result is the same checksum that {@link #readMigration(String, URL, long)} records in
+     * {@link ParsedMigration#checksum()}, so it can be compared against checksums stored when a migration was applied.
+     * </p>
+     *
+     * @param url the location of the file content
+     * @return the CRC32C checksum of the file content
+     * @throws IOException if the file cannot be read
+     */
+    public static long checksum(URL url) throws IOException {
+        CRC32C checksum = new CRC32C();
+        try (InputStream in = new CheckedInputStream(url.openStream(), checksum)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return checksum.getValue();
+    }
 
     /**
      * Reads migration SQL commands from a file.
      * <p>
-     * This method reads the migration SQL commands defined in a file and splits them by the specified delimiter.
-     * It returns a list of SQL commands, each representing a single migration statement.
+     * This is a convenience shortcut for {@code readMigration(filePath).upStatements().toList()}; callers that need more
+     * than one part of the file should use {@link #readMigration(String)} to avoid reading it several times.
      * </p>
      *
      * @param filePath the path to the migration file (must be in the classpath)
@@ -42,15 +217,14 @@ public class MigrationFileReader {
      * @throws RuntimeException if an error occurs while reading the file or parsing the SQL commands
      */
     public static List<String> readMigrationsFromFile(String filePath) {
-        log.info("Reading migration commands from file: {}", filePath);
-        return readSqlFromFile(filePath, MIGRATION_DELIMITER);
+        return readMigration(filePath).upStatements().toList();
     }
 
     /**
      * Reads rollback SQL commands from a file.
      * <p>
-     * This method reads the rollback SQL commands defined in a file and splits them by the specified delimiter.
-     * It returns a list of SQL commands, each representing a single rollback statement.
+     * This is a convenience shortcut for {@code readMigration(filePath).downStatements().toList()}; callers that need more
+     * than one part of the file should use {@link #readMigration(String)} to avoid reading it several times.
      * </p>
      *
      * @param filePath the path to the rollback file (must be in the classpath)
@@ -58,14 +232,13 @@ public class MigrationFileReader {
      * @throws RuntimeException if an error occurs while reading the file or parsing the SQL commands
      */
     public static List<String> readRollbacksFromFile(String filePath) {
-        log.info("Reading rollback commands from file: {}", filePath);
-        return readSqlFromFile(filePath, ROLLBACK_DELIMITER);
+        return readMigration(filePath).downStatements().toList();
     }
 
     /**
      * Reads the migration version from the file.
      * <p>
-     * This method reads the first line of the file, extracts the migration version (a number), and returns it.
+     * This is a convenience shortcut for {@code readMigration(filePath).version()}.
      * </p>
      *
      * @param filePath the path to the migration file (must be in the classpath)
@@ -73,82 +246,72 @@ public class MigrationFileReader {
      * @throws RuntimeException if the migration version cannot be extracted or if the file is not found
      */
     public static int readMigrationVersion(String filePath) {
-        log.info("Extracting migration version from file: {}", filePath);
-        try (InputStream inputStream = MigrationFileReader.class.getClassLoader().getResourceAsStream(filePath)) {
-            if (inputStream == null) {
-                log.error("File not found: {}", filePath);
-                throw new IOException("File %s not found".formatted(filePath));
-            }
-            String firstLine = new Scanner(inputStream).nextLine().trim();
-            log.debug("First line of the file: {}", firstLine);
-
-            Pattern pattern = Pattern.compile("\\d+");
-            Matcher matcher = pattern.matcher(firstLine);
-
-            if (!matcher.find()) {
-                log.error("Migration version not found in file: {}", filePath);
-                throw new RuntimeException("No migration number provided in file: " + filePath);
-            }
-
-            int version = Integer.parseInt(matcher.group());
-            log.info("Migration version extracted: {}", version);
-            return version;
-
-        } catch (IOException e) {
-            log.error("Error reading file: {}", filePath, e);
-            throw new RuntimeException(e);
-        }
+        return readMigration(filePath).version();
     }
 
-
     /**
-     * Retrieves the SQL content from the file stream, based on the provided delimiter.
-     * <p>
-     * This method reads the SQL commands from the file stream until the specified delimiter is found,
-     * then returns the SQL content before the delimiter.
-     * </p>
-     *
-     * @param fileStream the InputStream of the file being read
-     * @param delimiter the delimiter that separates migration or rollback commands
-     * @return the SQL content as a string before the delimiter
+     * Parses the header line and both sections from the reader. When {@code streamedFile} is given the statements
+     * are only counted, and the returned sections re-read them from that file on demand.
      */
-    public static String getSql(InputStream fileStream, String delimiter) {
-        log.debug("Parsing SQL content with delimiter: {}", delimiter);
-        Scanner scanner = new Scanner(fileStream).useDelimiter(delimiter);
-
-        String sql = null;
-        if (delimiter.equals(ROLLBACK_DELIMITER)) {
-            if (scanner.hasNext()) scanner.next(); // Skip migration part
-            sql = scanner.hasNext() ? scanner.next() : "";
-        } else {
-            if (scanner.hasNext()) sql = scanner.next(); // Get migration part
-        }
+    private static ParsedMigration parse(String filePath, BufferedReader reader, Checksum checksum, Path streamedFile)
+            throws IOException {
+        String firstLine = reader.readLine();
+        log.debug("Header line of the file: {}", firstLine);
+        MigrationHeader header = MigrationHeader.parse(firstLine, filePath);
+        MigrationDirectives directives = MigrationDirectives.from(header.attributes(), filePath);
 
-        log.debug("SQL content extracted before splitting by rollback: {}", sql);
-        return sql;
-    }
-
-    private static List<String> readSqlFromFile(String filePath, String delimiter) {
-        try (InputStream inputStream = MigrationFileReader.class.getClassLoader().getResourceAsStream(filePath)) {
-            if (inputStream == null) {
-                log.error("File not found: {}", filePath);
-                throw new IOException("File %s not found".formatted(filePath));
+        List<String> upStatements = new ArrayList<>();
+        List<String> downStatements = new ArrayList<>();
+        int upCount = 0;
+        int downCount = 0;
+        SqlStatementTokenizer tokenizer = new SqlStatementTokenizer(reader, SECTION_DELIMITERS, 2);
+        while (tokenizer.hasNext()) {
+            String sql = tokenizer.next();
+            if (CopyBlock.isCopy(sql)) {
+                CopyBlock.parse(sql, filePath);
             }
+            if (MIGRATION_DELIMITER.equals(tokenizer.section())) {
+                upCount++;
+                if (streamedFile == null) {
+                    upStatements.add(sql);
+                }
+            } else if (ROLLBACK_DELIMITER.equals(tokenizer.section())) {
+                downCount++;
+                if (streamedFile == null) {
+                    downStatements.add(sql);
+                }
+            } else {
+                log.warn("Ignoring SQL command outside of migration and rollback sections in file {}", filePath);
+            }
+        }
 
-            String sql = getSql(inputStream, delimiter);
-            log.debug("Raw SQL read from file: {}", sql);
-
-            List<String> sqlCommands = Arrays.stream(sql.split(";"))
-                    .map(String::trim)
-                    .filter(command -> !command.isBlank())
-                    .toList();
+        for (String delimiter : List.of(MIGRATION_DELIMITER, ROLLBACK_DELIMITER)) {
+            if (!tokenizer.sectionsSeen().contains(delimiter)) {
+                log.error("Delimiter {} not found in file: {}", delimiter, filePath);
+                throw new MigrationValidationException("%s: missing %s marker".formatted(filePath, delimiter));
+            }
+        }
 
-            log.info("Parsed {} SQL commands from file: {}", sqlCommands.size(), filePath);
-            return sqlCommands;
+        ParsedMigration migration = new ParsedMigration(
+                header.version(),
+                filePath,
+                streamedFile == null
+                        ? MigrationSection.of(upStatements)
+                        : MigrationSection.streamed(streamedFile, MIGRATION_DELIMITER, upCount),
+                streamedFile == null
+                        ? MigrationSection.of(downStatements)
+                        : MigrationSection.streamed(streamedFile, ROLLBACK_DELIMITER, downCount),
+                header.attributes(),
+                checksum.getValue()
+        );
 
-        } catch (IOException e) {
-            log.error("Error reading or parsing file: {}", filePath, e);
-            throw new RuntimeException(e);
+        log.info("Parsed migration version {} with {} migration and {} rollback commands from file: {}",
+                migration.version(), upCount, downCount, filePath);
+        if (directives != MigrationDirectives.NONE) {
+            log.info("Migration file {} declares execution directives: transactional={}, settings={}, execution={}",
+                    filePath, directives.transactional(), directives.settings(),
+                    directives.execution() == null ? "default" : directives.execution());
         }
+        return migration;
     }
-}
\ No newline at end of file
+}
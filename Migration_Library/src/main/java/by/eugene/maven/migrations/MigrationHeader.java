@@ -0,0 +1,126 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.exceptions.MigrationValidationException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The parsed header line of a migration file.
+ * <p>
+ * The header is the first line of a migration file and has the form
+ * {@code --migration <version>[ key=value ...]--}, for example {@code --migration 12 transactional=false--}.
+ * It is parsed by a small hand-written scanner in a single pass over the line: the version must directly follow the
+ * {@code --migration} keyword and every following token must be a {@code key=value} pair. Keys are lower-case
+ * identifiers, values run up to the next whitespace or the closing {@code --}. Execution directives among the
+ * attributes are interpreted by {@link MigrationDirectives}; any other key is kept as plain metadata.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationHeader header = MigrationHeader.parse("--migration 12 lock_timeout=5s--", "migrations/12.sql");
+ * int version = header.version();
+ * </pre>
+ *
+ * @param version    the migration version
+ * @param attributes the {@code key=value} attributes by key
+ */
+public record MigrationHeader(int version, Map<String, String> attributes) {
+    private static final String PREFIX = "--migration";
+    private static final String SUFFIX = "--";
+
+    /**
+     * Creates a new header, defensively copying the attributes.
+     */
+    public MigrationHeader {
+        attributes = Map.copyOf(attributes);
+    }
+
+    /**
+     * Parses a header line.
+     *
+     * @param line     the header line, with or without surrounding whitespace
+     * @param fileName the name of the migration file, used in error messages
+     * @return the parsed header
+     * @throws MigrationValidationException if the line is not a valid header
+     */
+    public static MigrationHeader parse(String line, String fileName) {
+        String header = line == null ? "" : line.trim();
+        int end = header.length() - SUFFIX.length();
+        if (!header.startsWith(PREFIX) || !header.endsWith(SUFFIX) || end <= PREFIX.length()
+                || !Character.isWhitespace(header.charAt(PREFIX.length()))) {
+            throw invalid(fileName, "malformed header line '%s'; expected '--migration <version>--'".formatted(header));
+        }
+
+        int position = skipWhitespace(header, PREFIX.length(), end);
+        int versionStart = position;
+        long version = 0;
+        while (position < end && isDigit(header.charAt(position))) {
+            version = version * 10 + (header.charAt(position) - '0');
+            if (version > Integer.MAX_VALUE) {
+                throw invalid(fileName, "migration number %s is out of range"
+                        .formatted(header.substring(versionStart, skipToken(header, position, end))));
+            }
+            position++;
+        }
+        if (position == versionStart) {
+            throw invalid(fileName, "no migration number provided in header line '%s'".formatted(header));
+        }
+        if (position < end && !Character.isWhitespace(header.charAt(position))) {
+            throw invalid(fileName, "invalid migration number '%s'"
+                    .formatted(header.substring(versionStart, skipToken(header, position, end))));
+        }
+
+        Map<String, String> attributes = new LinkedHashMap<>();
+        position = skipWhitespace(header, position, end);
+        while (position < end) {
+            int keyStart = position;
+            while (position < end && isKeyCharacter(header.charAt(position), position == keyStart)) {
+                position++;
+            }
+            if (position == keyStart || position == end || header.charAt(position) != '=') {
+                throw invalid(fileName, "invalid header attribute '%s'; expected key=value"
+                        .formatted(header.substring(keyStart, skipToken(header, position, end))));
+            }
+            String key = header.substring(keyStart, position++);
+
+            int valueStart = position;
+            position = skipToken(header, position, end);
+            if (position == valueStart) {
+                throw invalid(fileName, "header attribute '%s' has no value".formatted(key));
+            }
+            if (attributes.put(key, header.substring(valueStart, position)) != null) {
+                throw invalid(fileName, "header attribute '%s' is declared more than once".formatted(key));
+            }
+            position = skipWhitespace(header, position, end);
+        }
+
+        return new MigrationHeader((int) version, attributes);
+    }
+
+    private static MigrationValidationException invalid(String fileName, String problem) {
+        return new MigrationValidationException("%s: %s".formatted(fileName, problem));
+    }
+
+    private static int skipWhitespace(String header, int position, int end) {
+        while (position < end && Character.isWhitespace(header.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int skipToken(String header, int position, int end) {
+        while (position < end && !Character.isWhitespace(header.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isKeyCharacter(char c, boolean first) {
+        return c >= 'a' && c <= 'z' || c == '_' || !first && (isDigit(c) || c == '.' || c == '-');
+    }
+}
@@ -0,0 +1,261 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.exceptions.MigrationValidationException;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.Stream;
+
+/**
+ * Immutable index of the loaded migrations, ordered by version.
+ * <p>
+ * The index keeps the versions in a sorted primitive {@code int[]} next to an array of the migrations in the same
+ * order. It is built once when the migrations are loaded; every lookup and range query afterwards is a binary search
+ * over the version array and returns a view of the backing array, so selecting the migrations to apply or to roll
+ * back costs {@code O(log n)} regardless of how many migrations exist and never re-reads a migration file.
+ * </p>
+ * <p>
+ * Baseline migrations (see {@link ParsedMigration#isBaseline()}) are kept apart from the regular migrations, so a
+ * baseline may share its version with the last migration it replaces. They are only selected by
+ * {@link #pending(HistorySnapshot)} for a database without history.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationIndex index = MigrationIndex.of(migrations);
+ * List&lt;ParsedMigration&gt; pending = index.pendingAbove(currentVersion);
+ * List&lt;ParsedMigration&gt; rollbacks = index.rollbackRange(targetVersion, currentVersion);
+ * </pre>
+ */
+public final class MigrationIndex {
+    private static final MigrationIndex EMPTY = new MigrationIndex(new int[0], new ParsedMigration[0],
+            new ParsedMigration[0]);
+
+    private final int[] versions;
+    private final ParsedMigration[] migrations;
+    private final ParsedMigration[] baselines;
+
+    private MigrationIndex(int[] versions, ParsedMigration[] migrations, ParsedMigration[] baselines) {
+        this.versions = versions;
+        this.migrations = migrations;
+        this.baselines = baselines;
+    }
+
+    /**
+     * Builds the index of the given migrations.
+     *
+     * @param migrations the migrations, in any order
+     * @return the index
+     * @throws MigrationValidationException if a version is declared by more than one migration or more than one
+     *                                      baseline
+     */
+    public static MigrationIndex of(List<ParsedMigration> migrations) {
+        if (migrations.isEmpty()) {
+            return EMPTY;
+        }
+
+        ParsedMigration[] sorted = sortedUnique(migrations.stream().filter(m -> !m.isBaseline()));
+        ParsedMigration[] baselines = sortedUnique(migrations.stream().filter(ParsedMigration::isBaseline));
+        int[] versions = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            versions[i] = sorted[i].version();
+        }
+        return new MigrationIndex(versions, sorted, baselines);
+    }
+
+    private static ParsedMigration[] sortedUnique(Stream<ParsedMigration> migrations) {
+        ParsedMigration[] sorted = migrations.sorted(Comparator.comparingInt(ParsedMigration::version))
+                .toArray(ParsedMigration[]::new);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].version() == sorted[i - 1].version()) {
+                throw new MigrationValidationException("Version %d is declared by files %s and %s"
+                        .formatted(sorted[i].version(), sorted[i - 1].fileName(), sorted[i].fileName()));
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the number of migrations in the index.
+     *
+     * @return the number of migrations
+     */
+    public int size() {
+        return versions.length;
+    }
+
+    /**
+     * Returns the highest version in the index.
+     *
+     * @return the highest version, or {@code 0} if the index is empty
+     */
+    public int latestVersion() {
+        return versions.length == 0 ? 0 : versions[versions.length - 1];
+    }
+
+    /**
+     * Returns all migrations in ascending version order.
+     *
+     * @return an immutable view of all migrations
+     */
+    public List<ParsedMigration> all() {
+        return new Slice(migrations, 0, migrations.length, false);
+    }
+
+    /**
+     * Returns the baseline migrations in ascending version order.
+     *
+     * @return an immutable view of the baselines
+     */
+    public List<ParsedMigration> baselines() {
+        return new Slice(baselines, 0, baselines.length, false);
+    }
+
+    /**
+     * Returns the baseline with the highest version that is not greater than the given one.
+     *
+     * @param version the inclusive upper bound
+     * @return the baseline, or {@code null} if there is none
+     */
+    public ParsedMigration latestBaseline(int version) {
+        for (int i = baselines.length - 1; i >= 0; i--) {
+            if (baselines[i].version() <= version) {
+                return baselines[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the migrations a migrate run applies, in execution order.
+     * <p>
+     * On a database without history the latest baseline is applied first, followed by the migrations above its
+     * version. Otherwise every migration that the history does not record as applied is returned.
+     * </p>
+     *
+     * @param history the snapshot of the history table
+     * @return the migrations to apply
+     */
+    public List<ParsedMigration> pending(HistorySnapshot history) {
+        ParsedMigration baseline = history.size() == 0 ? latestBaseline(Integer.MAX_VALUE) : null;
+        List<ParsedMigration> pending = new ArrayList<>();
+        if (baseline != null) {
+            pending.add(baseline);
+        }
+        for (ParsedMigration migration : pendingAbove(baseline == null ? history.baselineVersion() : baseline.version())) {
+            if (!history.isApplied(migration.version())) {
+                pending.add(migration);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Returns the migration with the given version.
+     *
+     * @param version the version
+     * @return the migration, or {@code null} if no migration has this version
+     */
+    public ParsedMigration get(int version) {
+        int position = Arrays.binarySearch(versions, version);
+        return position >= 0 ? migrations[position] : null;
+    }
+
+    /**
+     * Returns the migrations with a version greater than the given one, in ascending version order.
+     *
+     * @param version the exclusive lower bound, typically the current database version
+     * @return an immutable view of the pending migrations
+     */
+    public List<ParsedMigration> pendingAbove(int version) {
+        return new Slice(migrations, upperBound(version), migrations.length, false);
+    }
+
+    /**
+     * Returns at most {@code count} migrations with a version greater than the given one, in ascending version order.
+     *
+     * @param version the exclusive lower bound
+     * @param count   the maximum number of migrations to return
+     * @return an immutable view of the next migrations
+     */
+    public List<ParsedMigration> next(int version, int count) {
+        int from = upperBound(version);
+        return new Slice(migrations, from, from + Math.min(Math.max(count, 0), migrations.length - from), false);
+    }
+
+    /**
+     * Returns the migrations with a version in {@code (fromExclusive, toInclusive]}, in ascending version order.
+     *
+     * @param fromExclusive the exclusive lower bound
+     * @param toInclusive   the inclusive upper bound
+     * @return an immutable view of the migrations in the range
+     */
+    public List<ParsedMigration> range(int fromExclusive, int toInclusive) {
+        int from = upperBound(fromExclusive);
+        return new Slice(migrations, from, Math.max(from, upperBound(toInclusive)), false);
+    }
+
+    /**
+     * Returns the migrations to roll back to go from {@code currentVersion} down to {@code targetVersion}: the
+     * migrations with a version in {@code (targetVersion, currentVersion]}, in descending version order.
+     *
+     * @param targetVersion  the version to roll back to, which itself stays applied
+     * @param currentVersion the current database version
+     * @return an immutable view of the migrations to roll back, highest version first
+     */
+    public List<ParsedMigration> rollbackRange(int targetVersion, int currentVersion) {
+        int from = upperBound(targetVersion);
+        return new Slice(migrations, from, Math.max(from, upperBound(currentVersion)), true);
+    }
+
+    /**
+     * Returns the position of the first version greater than the given one.
+     */
+    private int upperBound(int version) {
+        int low = 0;
+        int high = versions.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (versions[middle] <= version) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Immutable view of a range of the migration array, optionally in reverse order.
+     */
+    private static final class Slice extends AbstractList<ParsedMigration> implements RandomAccess {
+        private final ParsedMigration[] migrations;
+        private final int from;
+        private final int to;
+        private final boolean descending;
+
+        private Slice(ParsedMigration[] migrations, int from, int to, boolean descending) {
+            this.migrations = migrations;
+            this.from = from;
+            this.to = to;
+            this.descending = descending;
+        }
+
+        @Override
+        public ParsedMigration get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index %d out of bounds for length %d".formatted(index, size()));
+            }
+            return migrations[descending ? to - 1 - index : from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.exceptions.MigrationValidationException;
+import by.eugene.maven.migrations.source.MigrationSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Loads and validates a set of migration files into an ordered, immutable list of migrations.
+ * <p>
+ * Files are parsed by a {@link MigrationFileReader}, either one after another or, when the configured parallelism
+ * is greater than one, concurrently on a dedicated {@link ForkJoinPool}. Every file is parsed even if another one
+ * fails, so a single {@link MigrationValidationException} reports all malformed headers, missing section markers
+ * and duplicate versions at once.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationLoader loader = new MigrationLoader(new MigrationFileReader(settings), 8);
+ * List&lt;ParsedMigration&gt; migrations = loader.load(MigrationSource.of("migrations"));
+ * </pre>
+ */
+@Slf4j
+public class MigrationLoader {
+    private final MigrationFileReader migrationFileReader;
+    private final int parallelism;
+
+    /**
+     * Creates a loader.
+     *
+     * @param migrationFileReader the reader used to parse each file
+     * @param parallelism         the number of files parsed concurrently; {@code 1} loads the files serially
+     */
+    public MigrationLoader(MigrationFileReader migrationFileReader, int parallelism) {
+        this.migrationFileReader = migrationFileReader;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Parses and validates the given classpath migration files.
+     *
+     * @param fileNames the classpath locations of the migration files
+     * @return the parsed migrations ordered by version
+     * @throws MigrationValidationException if any file is invalid or a version is declared more than once
+     */
+    public List<ParsedMigration> load(List<String> fileNames) {
+        return load(fileNames, migrationFileReader::read);
+    }
+
+    /**
+     * Parses and validates every migration file listed by the given source.
+     *
+     * @param source the source listing and resolving the migration files
+     * @return the parsed migrations ordered by version
+     * @throws MigrationValidationException if any file is invalid or a version is declared more than once
+     */
+    public List<ParsedMigration> load(MigrationSource source) {
+        return load(source.list(), fileName -> migrationFileReader.read(fileName, source.resolve(fileName)));
+    }
+
+    private List<ParsedMigration> load(List<String> fileNames, Function<String, ParsedMigration> reader) {
+        long start = System.nanoTime();
+        List<LoadResult> results = parallelism > 1 && fileNames.size() > 1
+                ? loadInParallel(fileNames, reader)
+                : fileNames.stream().map(fileName -> loadFile(fileName, reader)).toList();
+
+        List<String> problems = new ArrayList<>();
+        List<ParsedMigration> migrations = new ArrayList<>(results.size());
+        for (LoadResult result : results) {
+            if (result.problem() != null) {
+                problems.add(result.problem());
+            } else {
+                migrations.add(result.migration());
+            }
+        }
+        Map<Boolean, List<ParsedMigration>> byKind = migrations.stream()
+                .collect(Collectors.partitioningBy(ParsedMigration::isBaseline));
+        problems.addAll(findDuplicateVersions(byKind.get(false)));
+        problems.addAll(findDuplicateVersions(byKind.get(true)));
+
+        if (!problems.isEmpty()) {
+            log.error("Validation of {} migration files failed with {} problems", fileNames.size(), problems.size());
+            throw new MigrationValidationException(problems);
+        }
+
+        migrations.sort(Comparator.comparingInt(ParsedMigration::version));
+        log.info("Loaded and validated {} migration files in {} ms (parallelism {})",
+                migrations.size(), (System.nanoTime() - start) / 1_000_000, parallelism);
+        return List.copyOf(migrations);
+    }
+
+    private List<LoadResult> loadInParallel(List<String> fileNames, Function<String, ParsedMigration> reader) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> fileNames.parallelStream()
+                    .map(fileName -> loadFile(fileName, reader))
+                    .toList()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading migration files", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while loading migration files", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private LoadResult loadFile(String fileName, Function<String, ParsedMigration> reader) {
+        try {
+            return new LoadResult(reader.apply(fileName), null);
+        } catch (MigrationValidationException e) {
+            return new LoadResult(null, String.join("; ", e.getProblems()));
+        } catch (RuntimeException e) {
+            log.error("Unable to load migration file: {}", fileName, e);
+            return new LoadResult(null, "%s: %s".formatted(fileName, e.getMessage()));
+        }
+    }
+
+    private static List<String> findDuplicateVersions(List<ParsedMigration> migrations) {
+        Map<Integer, List<String>> filesByVersion = migrations.stream()
+                .collect(Collectors.groupingBy(ParsedMigration::version, TreeMap::new,
+                        Collectors.mapping(ParsedMigration::fileName, Collectors.toList())));
+
+        return filesByVersion.entrySet().stream()
+                .filter(entry -> entry.getValue().size() > 1)
+                .map(entry -> "Version %d is declared by files %s".formatted(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    private record LoadResult(ParsedMigration migration, String problem) {
+    }
+}
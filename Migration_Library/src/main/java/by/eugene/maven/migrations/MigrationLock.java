@@ -0,0 +1,216 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.config.ConnectionManager;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster-wide lock serializing migrate and rollback runs across every instance sharing a database.
+ * <p>
+ * The lock is a PostgreSQL session-level advisory lock held on a dedicated connection, so it is released by the
+ * server as soon as the holder closes the connection or dies. While the lock is held a heartbeat query runs on that
+ * connection at a fixed interval; this keeps idle-session timeouts and proxies from dropping the session and detects
+ * a lost lock before the run commits (see {@link #ensureHeld()}).
+ * </p>
+ * <p>
+ * An instance that finds the lock taken does not poll in a tight loop: it listens on the
+ * {@value #RELEASE_CHANNEL} channel, which the holder notifies when it releases the lock, and waits for the
+ * notification with an exponential, jittered backoff as an upper bound in case the notification is missed. Once it
+ * gets the lock it runs as usual; the history snapshot read at the start of the run then shows that the waiting
+ * instance has nothing left to apply.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * try (MigrationLock lock = MigrationLock.acquire(connectionManager, Duration.ofMinutes(10), Duration.ofSeconds(10))) {
+ *     // migrate in a MigrationRunContext opened with the lock, which calls lock.ensureHeld() before every commit
+ * }
+ * </pre>
+ */
+@Slf4j
+public final class MigrationLock implements AutoCloseable {
+    /**
+     * The advisory lock key, the ASCII bytes of {@code MIGRLOCK}.
+     */
+    static final long LOCK_KEY = 0x4D4947524C4F434BL;
+    static final String RELEASE_CHANNEL = "migration_lock_released";
+
+    private static final long MIN_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 5_000;
+
+    private final Connection connection;
+    private final boolean waited;
+    private ScheduledExecutorService heartbeat;
+    private volatile boolean lost;
+
+    private MigrationLock(Connection connection, boolean waited) {
+        this.connection = connection;
+        this.waited = waited;
+    }
+
+    /**
+     * Returns a lock that is not backed by the database, for runs with the lock disabled.
+     *
+     * @return a no-op lock
+     */
+    public static MigrationLock disabled() {
+        return new MigrationLock(null, false);
+    }
+
+    /**
+     * Acquires the migration lock, waiting while another instance holds it.
+     *
+     * @param connectionManager the connection manager used to open the dedicated lock connection
+     * @param waitTimeout       the maximum time to wait for the lock
+     * @param heartbeatInterval the interval of the heartbeat query while the lock is held
+     * @return the held lock, to be closed when the run finishes
+     * @throws RuntimeException if the lock cannot be acquired within the wait timeout or the database fails
+     */
+    public static MigrationLock acquire(ConnectionManager connectionManager, Duration waitTimeout,
+                                        Duration heartbeatInterval) {
+        Connection connection = connectionManager.openConnection();
+        try {
+            connection.setAutoCommit(true);
+            boolean waited = false;
+            if (!tryLock(connection)) {
+                waited = true;
+                waitForLock(connection, waitTimeout);
+            }
+
+            MigrationLock lock = new MigrationLock(connection, waited);
+            lock.startHeartbeat(heartbeatInterval);
+            log.info("Migration lock acquired{}", waited ? " after waiting for another instance" : "");
+            return lock;
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(connection);
+            if (e instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            log.error("Error acquiring the migration lock.", e);
+            throw new RuntimeException("Failed to acquire the migration lock", e);
+        }
+    }
+
+    /**
+     * Returns whether another instance held the lock when this one asked for it, which usually means the other
+     * instance already applied the pending migrations.
+     *
+     * @return {@code true} if the lock was acquired after waiting
+     */
+    public boolean waited() {
+        return waited;
+    }
+
+    /**
+     * Returns whether the lock is still held, that is, no heartbeat has failed.
+     *
+     * @return {@code true} if the lock is held or disabled
+     */
+    public boolean isHeld() {
+        return !lost;
+    }
+
+    /**
+     * Checks that the lock is still held.
+     *
+     * @throws RuntimeException if a heartbeat failed, so the lock may have been released by the server
+     */
+    public void ensureHeld() {
+        if (!isHeld()) {
+            throw new RuntimeException("The migration lock was lost; another instance may be migrating");
+        }
+    }
+
+    /**
+     * Releases the lock, notifies waiting instances and closes the lock connection.
+     */
+    @Override
+    public void close() {
+        if (connection == null) {
+            return;
+        }
+        heartbeat.shutdownNow();
+        synchronized (this) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+                statement.execute("NOTIFY " + RELEASE_CHANNEL);
+                log.info("Migration lock released");
+            } catch (SQLException e) {
+                log.warn("Unable to release the migration lock; it is released when the connection closes", e);
+            } finally {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private static void waitForLock(Connection connection, Duration waitTimeout) throws SQLException {
+        log.info("Migration lock is held by another instance; waiting up to {} s", waitTimeout.toSeconds());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + RELEASE_CHANNEL);
+        }
+        PGConnection notifications = connection.unwrap(PGConnection.class);
+
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        long backoff = MIN_BACKOFF_MS;
+        while (!tryLock(connection)) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                log.error("Timed out after {} s waiting for the migration lock", waitTimeout.toSeconds());
+                throw new RuntimeException("Timed out waiting for the migration lock held by another instance");
+            }
+            long wait = Math.min(remaining, backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+            notifications.getNotifications((int) Math.max(1, wait));
+            backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("UNLISTEN " + RELEASE_CHANNEL);
+        }
+    }
+
+    private static boolean tryLock(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")")) {
+            return resultSet.next() && resultSet.getBoolean(1);
+        }
+    }
+
+    private void startHeartbeat(Duration interval) {
+        heartbeat = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "migration-lock-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        heartbeat.scheduleAtFixedRate(this::beat, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void beat() {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT 1");
+        } catch (SQLException e) {
+            if (!lost) {
+                log.error("Migration lock heartbeat failed; the lock may have been released", e);
+            }
+            lost = true;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Unable to close the migration lock connection", e);
+        }
+    }
+}
@@ -2,22 +2,21 @@ package by.eugene.maven.migrations;
 
 
 import by.eugene.maven.config.ConnectionManager;
+import by.eugene.maven.config.MigrationSettings;
+import by.eugene.maven.exceptions.MigrationValidationException;
+import by.eugene.maven.migrations.bundle.MigrationBundle;
+import by.eugene.maven.migrations.plan.MigrationPlan;
+import by.eugene.maven.migrations.plan.MigrationPlanner;
+import by.eugene.maven.migrations.source.MigrationSource;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.IOException;
-import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Stream;
 
 /**
  * Manages database migrations and rollbacks.
@@ -36,65 +35,145 @@ import java.util.stream.Stream;
  */
 @Slf4j
 public class MigrationManager {
-    private final ConnectionManager connectionManager = ConnectionManager.getInstance();
+    private final ConnectionManager connectionManager;
     private final MigrationExecutor migrationExecutor;
+    private final MigrationLoader migrationLoader;
+    private final MigrationParseCache parseCache;
+    private final boolean bundleEnabled;
+    private final MigrationSource migrationSource;
+    private final MigrationValidator migrationValidator;
+    private final MigrationSettings settings;
+    private TransactionMode transactionMode;
     private String migrationsDirectory;
-
-    private static final String historyTableSchema = """
-            create table if not exists history (
-                version int primary key,
-                file varchar,
-                timestamp timestamp
-                );
-            """;
+    private volatile MigrationIndex migrationIndex;
+    private MigrationStatus status;
+    private List<LockRetryAttempt> retryAttempts = List.of();
 
     /**
      * Constructs a new MigrationManager.
      * <p>
      * Initializes the MigrationExecutor and sets the directory where migration files are stored.
-     * It also creates the history table in the database.
+     * It also creates the history table in the database, or upgrades an existing one to the current schema.
      * </p>
      *
      * @param migrationExecutor the MigrationExecutor used to execute migration and rollback commands
-     * @param migrationDirectory the directory where migration files are located
+     * @param migrationDirectory the directory where migration files are located, optionally prefixed with
+     *                           {@code classpath:} or {@code filesystem:} (see {@link MigrationSource#of(String)})
      */
     public MigrationManager(MigrationExecutor migrationExecutor, String migrationDirectory) {
+        this(migrationExecutor, migrationDirectory, MigrationSettings.defaults());
+    }
+
+    /**
+     * Constructs a new MigrationManager with the given tuning settings.
+     *
+     * @param migrationExecutor the MigrationExecutor used to execute migration and rollback commands
+     * @param migrationDirectory the directory where migration files are located
+     * @param settings the tuning settings, such as the streaming threshold for large migration files
+     */
+    public MigrationManager(MigrationExecutor migrationExecutor, String migrationDirectory, MigrationSettings settings) {
+        this(ConnectionManager.getInstance(), migrationExecutor, migrationDirectory, settings);
+    }
+
+    /**
+     * Constructs a new MigrationManager for the database of the given connection manager instead of the singleton
+     * one.
+     *
+     * @param connectionManager the connection manager of the database to migrate
+     * @param migrationExecutor the MigrationExecutor used to execute migration and rollback commands, created with
+     *                          the same connection manager
+     * @param migrationDirectory the directory where migration files are located
+     * @param settings the tuning settings
+     */
+    public MigrationManager(ConnectionManager connectionManager, MigrationExecutor migrationExecutor,
+                            String migrationDirectory, MigrationSettings settings) {
+        this.connectionManager = connectionManager;
         this.migrationExecutor = migrationExecutor;
         this.migrationsDirectory = migrationDirectory;
+        MigrationFileReader fileReader = new MigrationFileReader(settings);
+        this.migrationLoader = new MigrationLoader(fileReader, settings.getLoadParallelism());
+        this.parseCache = fileReader.parseCache();
+        this.bundleEnabled = settings.isBundleEnabled();
+        this.migrationSource = MigrationSource.of(migrationDirectory);
+        this.migrationValidator = new MigrationValidator(migrationSource, settings.getLoadParallelism());
+        this.settings = settings;
+        this.transactionMode = settings.getTransactionMode();
         this.createHistoryTable();
     }
 
     /**
      * Executes the pending migrations by reading migration files from the specified directory.
      * <p>
-     * This method processes migration files in order, executing those that have not been applied yet and committing the transaction
-     * if all migrations are successful. If an error occurs, the transaction is rolled back.
+     * This method processes migration files in version order, executing those that have not been applied yet and committing the transaction
+     * if all migrations are successful. If an error occurs, the transaction is rolled back and the failing migration
+     * is recorded in the history with {@code success = false}, so it is reported as failed until it is applied. The
+     * applied migrations are read once into a {@link HistorySnapshot}, so the pending migrations are selected in memory. On a database
+     * without history the run starts from the latest baseline, if any (see {@link MigrationSquasher}). The whole run
+     * executes on the single dedicated connection of a {@link MigrationRunContext}, with the transaction granularity
+     * of the configured {@link TransactionMode}. The stored digest is cleared when the run starts, so a run that
+     * commits some migrations and then fails is never mistaken for an up-to-date database.
+     * </p>
+     * <p>
+     * The run holds the cluster-wide {@link MigrationLock} from before the history is read until the transaction
+     * ends, so instances starting at the same time apply the migrations once: the others wait for the lock and then
+     * find nothing pending in the history.
+     * </p>
+     * <p>
+     * When the database is {@link #isUpToDate() up to date} the method returns after a single query, without parsing
+     * the migration files or taking the lock. An instance that had to wait for the lock checks the digest again once
+     * it holds the lock, and returns without parsing when the other instance applied the same migrations; the
+     * migration files are only loaded after that check. A successful run stores the {@link MigrationDigest} of the
+     * migrations in the same transaction.
      * </p>
      */
     public void executeMigrations() {
-        List<String> fileNames = getFiles(migrationsDirectory);
+        if (isUpToDate()) {
+            log.info("Database is up to date with the local migrations; nothing to migrate");
+            return;
+        }
         log.info("Starting migration process. Connection established.");
-        try (Connection connection = connectionManager.getConnection()) {
-            connection.setAutoCommit(false);
+        try (MigrationLock lock = acquireLock()) {
+            if (lock.waited() && isUpToDate()) {
+                log.info("Migrations were applied by another instance while waiting for the migration lock");
+                return;
+            }
+            MigrationIndex index = getMigrationIndex();
+            List<ParsedMigration> migrations = index.all();
+            try (MigrationRunContext run = MigrationRunContext.open(connectionManager, transactionMode, migrationSource, lock)) {
+                Connection connection = run.connection();
 
-            try {
-                log.info("Starting migration process with files: {}",
-                        fileNames.toString().replaceAll("[{}]", ""));
-                for (String fileName : fileNames) {
-                    if (!isApplied(fileName)) {
+                try {
+                    HistorySnapshot history = HistorySnapshot.load(connection);
+                    List<ParsedMigration> pending = index.pending(history);
+                    if (!pending.isEmpty() && pending.get(0).isBaseline()) {
+                        log.info("History is empty; provisioning from baseline {} (version {})",
+                                pending.get(0).fileName(), pending.get(0).version());
+                    }
+                    log.info("Starting migration process with {} migration files: {} already executed, {} pending",
+                            migrations.size(), history.size(), pending.size());
+                    if (pending.isEmpty() && lock.waited()) {
+                        log.info("Nothing is pending after waiting for the migration lock; updating the stored digest");
+                    }
+
+                    MigrationDigest.store(connection, null);
+                    for (ParsedMigration migration : pending) {
+                        String fileName = migration.fileName();
                         log.info("Executing migration file: {}", fileName);
-                        migrationExecutor.executeMigration(fileName);
+                        run.step(migration, () -> migrationExecutor.executeMigration(run, migration));
                         log.info("Migration file executed successfully: {}", fileName);
-                    } else {
-                        log.info("Migration file already executed: {}", fileName);
                     }
+                    MigrationDigest.store(connection, MigrationDigest.of(index));
+                    run.commit();
+                    log.info("Migration commited successfully");
+                } catch (SQLException | RuntimeException e) {
+                    log.error("Error while processing migration files. Rollback changes", e);
+                    run.abort();
+                    recordFailure(run, e);
+                    throw e;
+                } finally {
+                    invalidateStatus();
+                    recordRetryAttempts(run);
                 }
-                connection.commit();
-                log.info("Migration commited successfully");
-            } catch (SQLException e) {
-                log.error("Error while processing migration files. Rollback changes", e);
-                connection.rollback();
-                throw e;
             }
         } catch (SQLException e) {
             log.error("Error while managing the database connection or migrations.", e);
@@ -107,48 +186,57 @@ public class MigrationManager {
      * <p>
      * This method rolls back migrations in reverse order from the current version down to the target version,
      * ensuring that all necessary rollback files are executed. If any error occurs, the transaction is rolled back.
+     * Like {@link #executeMigrations()}, the run holds the cluster-wide {@link MigrationLock}.
      * </p>
      *
      * @param targetVersion the target database version to roll back to
      */
     public void executeRollbacks(int targetVersion) {
-        List<String> fileNames = getFiles(migrationsDirectory);
+        MigrationIndex index = getMigrationIndex();
         log.info("Starting rollback process. Connection established.");
 
-        fileNames.sort(Comparator.reverseOrder());
-
-        try (Connection connection = connectionManager.getConnection()) {
-            connection.setAutoCommit(false);
+        try (MigrationLock lock = acquireLock();
+             MigrationRunContext run = MigrationRunContext.open(connectionManager, transactionMode, migrationSource, lock)) {
+            Connection connection = run.connection();
 
             try {
-                int currentVersion = getCurrentDbVersion();
+                HistorySnapshot history = HistorySnapshot.load(connection);
+                int currentVersion = history.currentVersion();
                 log.info("Current database version: {}. Target version: {}", currentVersion, targetVersion);
+                if (targetVersion < history.baselineVersion() && currentVersion > targetVersion) {
+                    log.error("Rollback target {} is below the applied baseline version {}",
+                            targetVersion, history.baselineVersion());
+                    throw new RuntimeException("Cannot roll back below the applied baseline version %d"
+                            .formatted(history.baselineVersion()));
+                }
 
                 if (currentVersion <= targetVersion) {
                     log.info("No rollbacks required. Database is already at or below the target version.");
                     return;
                 }
 
-                List<String> rollbacksToExecute = fileNames.stream()
-                        .filter(fileName -> MigrationFileReader.readMigrationVersion(fileName) > targetVersion
-                                && MigrationFileReader.readMigrationVersion(fileName) <= currentVersion)
-                        .toList();
+                List<ParsedMigration> rollbacksToExecute = index.rollbackRange(targetVersion, currentVersion);
 
-                log.info("Rollback files to execute: {}", rollbacksToExecute);
+                log.info("Rollback files to execute: {}",
+                        rollbacksToExecute.stream().map(ParsedMigration::fileName).toList());
 
-                for (String fileName : rollbacksToExecute) {
-                    log.info("Executing rollback for file: {}", fileName);
-                    migrationExecutor.executeRollback(fileName);
-                    log.info("Rollback executed successfully for file: {}", fileName);
+                MigrationDigest.store(connection, null);
+                for (ParsedMigration migration : rollbacksToExecute) {
+                    log.info("Executing rollback for file: {}", migration.fileName());
+                    run.step(migration, () -> migrationExecutor.executeRollback(run, migration));
+                    log.info("Rollback executed successfully for file: {}", migration.fileName());
                 }
 
-                connection.commit();
+                run.commit();
                 log.info("Rollback process completed successfully. Database rolled back to version: {}", targetVersion);
 
-            } catch (SQLException e) {
+            } catch (SQLException | RuntimeException e) {
                 log.error("Error while processing rollbacks. Rolling back changes.", e);
-                connection.rollback();
+                run.abort();
                 throw e;
+            } finally {
+                invalidateStatus();
+                recordRetryAttempts(run);
             }
         } catch (SQLException e) {
             log.error("Error while managing the database connection or rollbacks.", e);
@@ -156,35 +244,239 @@ public class MigrationManager {
         }
     }
 
+    /**
+     * Records the failed migration of an aborted migrate run in the history, without letting a failure to do so hide
+     * the failure of the run.
+     */
+    private static void recordFailure(MigrationRunContext run, Exception failure) {
+        try {
+            run.recordFailure();
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Unable to record the failed migration in history", e);
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Sets the transaction granularity of subsequent migrate and rollback runs, overriding the
+     * {@code migration.transaction.mode} setting.
+     *
+     * @param transactionMode the transaction mode
+     */
+    public void setTransactionMode(TransactionMode transactionMode) {
+        this.transactionMode = transactionMode;
+    }
+
+    /**
+     * Returns the attempts of the last migrate or rollback run that were retried after a lock failure (see
+     * {@link LockRetryPolicy}).
+     *
+     * @return the retried attempts in execution order, empty if no statement of the last run failed on a lock
+     */
+    public List<LockRetryAttempt> getRetryAttempts() {
+        return retryAttempts;
+    }
+
     /**
      * Retrieves the current version of the database from the history table.
      * <p>
-     * This method queries the history table to find the highest applied migration version.
+     * This method returns the highest applied migration version from the cached {@link #getStatus() status}, so
+     * repeated calls do not query the database until a migrate or rollback run invalidates the cache.
      * </p>
      *
-     * @return the current database version
+     * @return the current database version, {@code 0} if no migration has been applied
      */
     public int getCurrentDbVersion() {
-        Connection connection = this.connectionManager.getConnection();
-        PreparedStatement statement = null;
+        return getStatus().currentVersion();
+    }
+
+    /**
+     * Returns the migration status of the database, reading it on first use.
+     * <p>
+     * The status is built from one read of the history table and the loaded migrations, and is cached until
+     * {@link #invalidateStatus()} is called; {@link #executeMigrations()} and {@link #executeRollbacks(int)} do so
+     * when they finish. When the migrations are not loaded yet and the database is {@link #isUpToDate() up to date},
+     * the status is built from the history alone, so the migration files are not parsed.
+     * </p>
+     *
+     * @return the cached migration status
+     * @throws RuntimeException if the history table or the migration files cannot be read
+     */
+    public synchronized MigrationStatus getStatus() {
+        if (status == null) {
+            status = migrationIndex == null && isUpToDate()
+                    ? MigrationStatus.upToDate(loadHistory())
+                    : MigrationStatus.of(getMigrationIndex(), loadHistory());
+            log.debug("Migration status refreshed: current version {}, {} pending",
+                    status.currentVersion(), status.pendingVersions().size());
+        }
+        return status;
+    }
+
+    /**
+     * Drops the cached migration status, so the next {@link #getStatus()} reads it from the database again.
+     */
+    public synchronized void invalidateStatus() {
+        status = null;
+    }
+
+    /**
+     * Checks whether every local migration is applied and unchanged, without parsing the migration files.
+     * <p>
+     * The {@link MigrationDigest} of the local migration set is compared with the digest stored by the last
+     * successful migrate run, which costs one primary-key lookup. The local digest is computed from the bundle index
+     * when a bundle is used, and otherwise by hashing the files and reading only their header lines; files whose
+     * parse cache entry is still valid are not read at all.
+     * </p>
+     *
+     * @return {@code true} if the database is up to date with the local migrations
+     * @throws RuntimeException if the meta table or the migration files cannot be read
+     */
+    public boolean isUpToDate() {
+        String stored;
         try {
-            statement = connection
-                    .prepareStatement("SELECT max(version) FROM history");
-            statement.execute();
-            statement.getResultSet().next();
-            return statement.getResultSet().getInt(1);
+            stored = MigrationDigest.stored(connectionManager.getConnection());
         } catch (SQLException e) {
-            log.error("Error retrieving the current database version.", e);
-            throw new RuntimeException(e);
+            log.error("Error reading the stored migration digest.", e);
+            throw new RuntimeException("Failed to read the migration digest", e);
+        }
+        if (stored == null) {
+            return false;
+        }
+        String local = migrationIndex != null || bundleEnabled && migrationSource.bundle() != null
+                ? MigrationDigest.of(getMigrationIndex())
+                : MigrationDigest.scan(migrationSource, settings.getLoadParallelism(), parseCache);
+        log.debug("Migration digest: local {}, stored {}", local, stored);
+        return stored.equals(local);
+    }
+
+    /**
+     * Squashes the migrations up to the given version into a baseline file (see {@link MigrationSquasher}).
+     * <p>
+     * The baseline takes effect once it is added to the migration directory: a database with an empty history is
+     * then provisioned from the baseline and the migrations above its version.
+     * </p>
+     *
+     * @param throughVersion the highest version included in the baseline
+     * @param output         the baseline file to write
+     * @return the written file
+     * @throws RuntimeException if there is nothing to squash or the file cannot be written
+     */
+    public Path squashMigrations(int throughVersion, Path output) {
+        return MigrationSquasher.squash(getMigrationIndex(), throughVersion, output, migrationSource);
+    }
+
+    /**
+     * Computes what {@link #executeMigrations()} would do, without executing anything.
+     * <p>
+     * The plan costs a single query against the database: the history table is read once into a
+     * {@link HistorySnapshot} and the pending migrations are selected in memory.
+     * </p>
+     *
+     * @return the plan of the pending migrations
+     * @throws RuntimeException if the history table or the migration files cannot be read
+     */
+    public MigrationPlan planMigrations() {
+        return MigrationPlanner.planMigrate(getMigrationIndex(), loadHistory());
+    }
+
+    /**
+     * Computes what {@link #executeRollbacks(int)} would do, without executing anything.
+     *
+     * @param targetVersion the target database version to roll back to
+     * @return the plan of the rollbacks
+     * @throws RuntimeException if the history table or the migration files cannot be read
+     */
+    public MigrationPlan planRollbacks(int targetVersion) {
+        return MigrationPlanner.planRollback(getMigrationIndex(), loadHistory(), targetVersion);
+    }
+
+    /**
+     * Checks that the applied migration files were not changed or removed after they were applied.
+     * <p>
+     * The checksums recorded in the history table are read with a single query and compared with the checksums of
+     * the current migration files, which are hashed in parallel (see {@link MigrationValidator}).
+     * </p>
+     *
+     * @return the validation report listing every changed or missing migration file
+     * @throws RuntimeException if the history table or the migration files cannot be read
+     */
+    public MigrationValidator.Report validateAppliedMigrations() {
+        return migrationValidator.validate(loadHistory().checksums());
+    }
+
+    /**
+     * Reads the history table into an in-memory snapshot with a single streaming query.
+     *
+     * @return the snapshot of the applied migrations
+     * @throws RuntimeException if the history table cannot be read
+     */
+    public HistorySnapshot loadHistory() {
+        try {
+            return HistorySnapshot.load(connectionManager.getConnection());
+        } catch (SQLException e) {
+            log.error("Error reading the history table.", e);
+            throw new RuntimeException("Failed to read migration history", e);
+        }
+    }
+
+    /**
+     * Returns the version index of the migrations, loading the migrations on first use.
+     * <p>
+     * The migrations are loaded and indexed once per manager; subsequent calls return the same index, so range
+     * queries for migrate and rollback do not list or parse the migration directory again. Concurrent first calls
+     * load the migrations once.
+     * </p>
+     *
+     * @return the version index of the migrations
+     * @throws MigrationValidationException if a file is invalid or a version is declared more than once
+     */
+    public MigrationIndex getMigrationIndex() {
+        MigrationIndex index = migrationIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = migrationIndex;
+                if (index == null) {
+                    index = MigrationIndex.of(loadMigrations());
+                    log.info("Indexed {} migrations; latest version {}", index.size(), index.latestVersion());
+                    migrationIndex = index;
+                }
+            }
         }
+        return index;
+    }
 
+    /**
+     * Reads, parses and validates every migration file of the migration directory.
+     * <p>
+     * When the build produced a {@link MigrationBundle} for the migration directory, the migrations are taken from
+     * the bundle and the directory is neither listed nor parsed; a bundle in an exploded output directory that is
+     * older than the migration files is ignored (see {@link MigrationSource#bundle()}). Otherwise the files are listed by the
+     * {@link MigrationSource} of the directory and each file is read at most once, and not
+     * at all when the parse cache holds a valid entry for it. Files are parsed concurrently when a load parallelism
+     * greater than one is configured.
+     * </p>
+     *
+     * @return the immutable list of parsed migrations ordered by version
+     * @throws MigrationValidationException if a file is invalid or a version is declared more than once
+     */
+    public List<ParsedMigration> loadMigrations() {
+        if (bundleEnabled) {
+            URL bundle = migrationSource.bundle();
+            if (bundle != null) {
+                return MigrationBundle.read(bundle);
+            }
+            log.debug("No migration bundle found for directory {}; reading migration files", migrationsDirectory);
+        }
+        return migrationLoader.load(migrationSource);
     }
 
     /**
      * Retrieves a list of migration file names from the specified directory.
      * <p>
-     * This method reads all files in the specified migration directory, sorts them in ascending order, and returns
-     * a list of their names.
+     * This method lists all files of the specified migration directory through its {@link MigrationSource}, which
+     * works for exploded classpath directories, jars and filesystem directories, and returns their names sorted in
+     * ascending order.
      * </p>
      *
      * @param directory the directory to read migration files from
@@ -192,36 +484,15 @@ public class MigrationManager {
      * @throws RuntimeException if there is an error reading the files from the directory
      */
     public List<String> getFiles(String directory) {
-        try {
-            log.info("Reading files from directory: {}", directory);
-            ClassLoader classLoader = MigrationManager.class.getClassLoader();
-            URL url = classLoader.getResource(directory);
-            if(url == null) {
-                log.error("Directory {} not found in resources.", directory);
-                throw new IOException("Directory %s not found in resources".formatted(directory));
-            }
-
-            log.info("Reading files from directory {}", directory);
-            Path directoryPath = Paths.get(url.toURI());
-
-            try (Stream<Path> paths = Files.list(directoryPath)) {
-                return new ArrayList<>(paths
-                        .map(path -> path.getFileName().toString())
-                        .map(fileName -> directoryPath.getFileName() + "/" + fileName)
-                        .sorted()
-                        .toList());
-            }
-        } catch (URISyntaxException | IOException e) {
-            log.error("Error while reading files from directory: {}", directory, e);
-            throw new RuntimeException("Error while path parsing", e);
-        }
+        return MigrationSource.of(directory).list();
     }
 
     /**
      * Checks whether a migration file has already been applied by querying the history table.
      * <p>
      * This method checks if the migration file exists in the history table and returns `true` if it does, indicating
-     * that the migration has already been applied.
+     * that the migration has already been applied. It runs one query per call; use {@link #loadHistory()} to check
+     * many migrations at once.
      * </p>
      *
      * @param migrationFile the name of the migration file
@@ -229,13 +500,11 @@ public class MigrationManager {
      * @throws SQLException if there is an error executing the query
      */
     public boolean isApplied(String migrationFile) throws SQLException {
-        String query = "SELECT COUNT(*) FROM history WHERE file = ?";
+        String query = "SELECT COUNT(*) FROM history WHERE file = ? AND success";
 
 
-        try {
-            Connection connection = connectionManager.getConnection();
-            PreparedStatement statement = connection.prepareStatement(query);
-
+        Connection connection = connectionManager.getConnection();
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, migrationFile);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
@@ -249,10 +518,29 @@ public class MigrationManager {
         }
     }
 
+    private void recordRetryAttempts(MigrationRunContext run) {
+        retryAttempts = List.copyOf(run.retryAttempts());
+        long lockFailures = retryAttempts.stream().filter(attempt -> !attempt.succeeded()).count();
+        if (lockFailures > 0) {
+            log.warn("{} attempts failed on a lock and were retried or given up; total backoff {} ms", lockFailures,
+                    retryAttempts.stream().mapToLong(LockRetryAttempt::backoffMs).sum());
+        }
+    }
+
+    private MigrationLock acquireLock() {
+        if (!settings.isLockEnabled()) {
+            return MigrationLock.disabled();
+        }
+        return MigrationLock.acquire(connectionManager, settings.getLockWaitTimeout(),
+                settings.getLockHeartbeatInterval());
+    }
+
+    /**
+     * Creates the history table, or upgrades it to the current schema version (see {@link HistorySchema}).
+     */
     private void createHistoryTable() {
-        Connection connection = connectionManager.getConnection();
         try {
-            connection.createStatement().execute(historyTableSchema);
+            HistorySchema.ensure(connectionManager.getConnection());
         } catch (SQLException e) {
             log.error("Error creating history table.", e);
             throw new RuntimeException(e);
@@ -0,0 +1,32 @@
+package by.eugene.maven.migrations;
+
+/**
+ * Execution metrics of one migration or rollback, recorded in the history table.
+ * <p>
+ * {@code attempts} counts the executions of the migration and its statements: {@code 1}, plus one for every attempt
+ * that failed on a lock and was retried by the {@link LockRetryPolicy}.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationMetrics metrics = new MigrationMetrics(1250, 42, 10_000);
+ * run.history().recordApplied(migration, metrics);
+ * </pre>
+ *
+ * @param executionMs    the wall-clock execution time in milliseconds
+ * @param statementCount the number of executed statements
+ * @param rowsAffected   the total number of rows reported as affected by the statements
+ * @param attempts       the number of attempts, {@code 1} if nothing was retried
+ */
+public record MigrationMetrics(long executionMs, int statementCount, long rowsAffected, int attempts) {
+    /**
+     * Creates the metrics of an execution that was not retried.
+     *
+     * @param executionMs    the wall-clock execution time in milliseconds
+     * @param statementCount the number of executed statements
+     * @param rowsAffected   the total number of rows reported as affected by the statements
+     */
+    public MigrationMetrics(long executionMs, int statementCount, long rowsAffected) {
+        this(executionMs, statementCount, rowsAffected, 1);
+    }
+}
@@ -0,0 +1,282 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.config.MigrationSettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Persistent on-disk cache of parsed migration files.
+ * <p>
+ * For every migration file the cache directory holds one entry with the file size, modification time and checksum
+ * recorded when the file was parsed, together with its version, header metadata and pre-split statements. An entry
+ * is used without reading the migration file when the size and modification time still match. If only the
+ * modification time differs (for example after a fresh checkout), the file is hashed and the entry is reused when
+ * the checksum still matches. Any other entry is replaced by a fresh parse. The recorded version and checksum also
+ * let {@link MigrationDigest} skip hashing unchanged files.
+ * </p>
+ * <p>
+ * Streamed migrations (see {@link MigrationSection}) are cached with their statement counts only. The cache never
+ * fails a run: unreadable or corrupt entries are logged and treated as misses.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationParseCache cache = new MigrationParseCache(Path.of(".migration-cache"), streamingThreshold);
+ * ParsedMigration migration = cache.get("migrations/23-11-2024-1.sql", url, () -&gt; parse(url));
+ * </pre>
+ */
+@Slf4j
+public class MigrationParseCache {
+    private static final int MAGIC = 0x4D504331;
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_EXTENSION = ".cache";
+
+    private final Path directory;
+    private final long streamingThreshold;
+
+    /**
+     * Creates a cache stored in the given directory, creating the directory if needed.
+     *
+     * @param directory          the cache directory
+     * @param streamingThreshold the file size from which migrations are streamed; entries parsed with a different
+     *                           decision are ignored
+     */
+    public MigrationParseCache(Path directory, long streamingThreshold) {
+        this.directory = directory;
+        this.streamingThreshold = streamingThreshold;
+        log.info("Migration parse cache enabled in directory: {}", directory.toAbsolutePath());
+    }
+
+    /**
+     * Creates the cache configured by the given settings.
+     *
+     * @param settings the tuning settings
+     * @return the cache, or {@code null} if no cache directory is configured
+     */
+    public static MigrationParseCache of(MigrationSettings settings) {
+        return settings.getCacheDirectory() == null
+                ? null
+                : new MigrationParseCache(settings.getCacheDirectory(), settings.getStreamingThreshold());
+    }
+
+    /**
+     * Returns the version and checksum recorded for a migration file, without reading the file, when the size and
+     * modification time of the file still match the cache entry.
+     *
+     * @param filePath the name of the migration file recorded in the history table
+     * @param url      the location of the file content
+     * @return the recorded fingerprint, or {@code null} if the entry is missing or out of date
+     */
+    MigrationDigest.Fingerprint fingerprint(String filePath, URL url) {
+        Path entryFile = directory.resolve(entryName(filePath));
+        if (!Files.isRegularFile(entryFile)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !filePath.equals(readString(in))) {
+                return null;
+            }
+            FileStat stat = stat(url);
+            if (in.readLong() != stat.size() || in.readLong() != stat.lastModified()) {
+                return null;
+            }
+            long checksum = in.readLong();
+            return new MigrationDigest.Fingerprint(in.readInt(), checksum);
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            log.warn("Ignoring unreadable parse cache entry {}", entryFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached parse of a migration file, parsing and caching it on a miss.
+     *
+     * @param filePath the name of the migration file recorded in the history table
+     * @param url      the location of the file content
+     * @param parser   the function used to parse the file on a cache miss
+     * @return the parsed migration
+     */
+    public ParsedMigration get(String filePath, URL url, Supplier<ParsedMigration> parser) {
+        FileStat stat;
+        try {
+            stat = stat(url);
+        } catch (IOException | URISyntaxException e) {
+            log.warn("Unable to stat migration file {}; bypassing the parse cache", filePath, e);
+            return parser.get();
+        }
+
+        Path entryFile = directory.resolve(entryName(filePath));
+        CachedEntry entry = readEntry(entryFile, filePath, stat);
+        if (entry != null && entry.size() == stat.size()) {
+            if (entry.lastModified() == stat.lastModified()) {
+                log.debug("Parse cache hit for file: {}", filePath);
+                return entry.migration();
+            }
+            if (entry.migration().checksum() == checksum(url)) {
+                log.debug("Parse cache hit after checksum comparison for file: {}", filePath);
+                writeEntry(entryFile, entry.migration(), stat);
+                return entry.migration();
+            }
+        }
+
+        log.debug("Parse cache miss for file: {}", filePath);
+        ParsedMigration migration = parser.get();
+        writeEntry(entryFile, migration, stat);
+        return migration;
+    }
+
+    private CachedEntry readEntry(Path entryFile, String filePath, FileStat stat) {
+        if (!Files.isRegularFile(entryFile)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !filePath.equals(readString(in))) {
+                return null;
+            }
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            long checksum = in.readLong();
+            int version = in.readInt();
+
+            int headerCount = in.readInt();
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 0; i < headerCount; i++) {
+                headers.put(readString(in), readString(in));
+            }
+
+            boolean streamed = in.readBoolean();
+            if (streamed != isStreamed(stat) || streamed && stat.file() == null) {
+                return null;
+            }
+            MigrationSection up = readSection(in, streamed, stat.file(), MigrationFileReader.MIGRATION_DELIMITER);
+            MigrationSection down = readSection(in, streamed, stat.file(), MigrationFileReader.ROLLBACK_DELIMITER);
+
+            return new CachedEntry(size, lastModified,
+                    new ParsedMigration(version, filePath, up, down, headers, checksum));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable parse cache entry {}", entryFile, e);
+            return null;
+        }
+    }
+
+    private void writeEntry(Path entryFile, ParsedMigration migration, FileStat stat) {
+        boolean streamed = migration.upStatements().isStreamed();
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, migration.fileName());
+                out.writeLong(stat.size());
+                out.writeLong(stat.lastModified());
+                out.writeLong(migration.checksum());
+                out.writeInt(migration.version());
+
+                out.writeInt(migration.headers().size());
+                for (Map.Entry<String, String> header : migration.headers().entrySet()) {
+                    writeString(out, header.getKey());
+                    writeString(out, header.getValue());
+                }
+
+                out.writeBoolean(streamed);
+                writeSection(out, migration.upStatements(), streamed);
+                writeSection(out, migration.downStatements(), streamed);
+            }
+            Files.move(temporary, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Unable to write parse cache entry {}", entryFile, e);
+        }
+    }
+
+    private static MigrationSection readSection(DataInputStream in, boolean streamed, Path file, String delimiter)
+            throws IOException {
+        int size = in.readInt();
+        if (streamed) {
+            return MigrationSection.streamed(file, delimiter, size);
+        }
+        List<String> statements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            statements.add(readString(in));
+        }
+        return MigrationSection.of(statements);
+    }
+
+    private static void writeSection(DataOutputStream out, MigrationSection section, boolean streamed)
+            throws IOException {
+        out.writeInt(section.size());
+        if (!streamed) {
+            for (String sql : section.toList()) {
+                writeString(out, sql);
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private boolean isStreamed(FileStat stat) {
+        return stat.file() != null && stat.size() >= streamingThreshold;
+    }
+
+    private static FileStat stat(URL url) throws IOException, URISyntaxException {
+        if ("file".equals(url.getProtocol())) {
+            Path file = Path.of(url.toURI());
+            return new FileStat(Files.size(file), Files.getLastModifiedTime(file).toMillis(), file);
+        }
+
+        URLConnection connection = url.openConnection();
+        return new FileStat(connection.getContentLengthLong(), connection.getLastModified(), null);
+    }
+
+    private static long checksum(URL url) {
+        try {
+            return MigrationFileReader.checksum(url);
+        } catch (IOException e) {
+            log.warn("Unable to compute checksum of {}", url, e);
+            return -1;
+        }
+    }
+
+    private static String entryName(String filePath) {
+        StringBuilder name = new StringBuilder(filePath.length() + 16);
+        for (int i = 0; i < filePath.length(); i++) {
+            char c = filePath.charAt(i);
+            name.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+        }
+        return name.append('-').append(Integer.toHexString(filePath.hashCode())).append(ENTRY_EXTENSION).toString();
+    }
+
+    private record FileStat(long size, long lastModified, Path file) {
+    }
+
+    private record CachedEntry(long size, long lastModified, ParsedMigration migration) {
+    }
+}
@@ -0,0 +1,259 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.config.ConnectionManager;
+import by.eugene.maven.migrations.source.MigrationSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of one migrate or rollback run: the connection the run executes on and the history changes it made.
+ * <p>
+ * A run opens one dedicated physical connection, turns auto-commit off and keeps both for its whole duration, so
+ * the connection handshake is paid once and every migration of the run shares the same transaction. The context is
+ * passed to every {@link MigrationExecutor} call of the run; nothing closes or replaces the connection until the
+ * run closes the context. History changes are collected in a {@link HistoryWriter} and written by
+ * {@link #commit()} right before the transaction commits.
+ * </p>
+ * <p>
+ * Each migration of the run is executed through {@link #step(ParsedMigration, Step)}, which applies the
+ * {@link TransactionMode} of the run: nothing extra for {@link TransactionMode#ALL_OR_NOTHING}, a commit after the
+ * migration for {@link TransactionMode#PER_MIGRATION} and a savepoint around it for
+ * {@link TransactionMode#SAVEPOINT_PER_MIGRATION}. {@link #abort()} ends a failed run and keeps exactly the work
+ * the mode promises to keep, and {@link #recordFailure()} then records the failed migration in the history.
+ * </p>
+ * <p>
+ * The run is bound to the {@link MigrationLock} it executes under. Every commit of the run, including the
+ * intermediate commits of {@link TransactionMode#PER_MIGRATION}, the commit of the work kept by {@link #abort()}
+ * and the commit of a recorded failure, first checks that the lock is still held, so an instance that lost the lock
+ * never commits while another instance may be migrating.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * try (MigrationRunContext run = MigrationRunContext.open(connectionManager, TransactionMode.PER_MIGRATION, source,
+ *         lock)) {
+ *     run.step(migration, () -&gt; executor.executeMigration(run, migration));
+ *     run.commit();
+ * }
+ * </pre>
+ */
+@Slf4j
+public class MigrationRunContext implements AutoCloseable {
+    private final Connection connection;
+    private final TransactionMode mode;
+    private final MigrationSource source;
+    private final MigrationLock lock;
+    private final HistoryWriter historyWriter = new HistoryWriter();
+    private final List<LockRetryAttempt> retryAttempts = new ArrayList<>();
+    private boolean rolledBackToSavepoint;
+    private ParsedMigration failedMigration;
+
+    private MigrationRunContext(Connection connection, TransactionMode mode, MigrationSource source,
+                                MigrationLock lock) {
+        this.connection = connection;
+        this.mode = mode;
+        this.source = source;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens a run without a migration lock on a new dedicated connection with auto-commit disabled.
+     *
+     * @param connectionManager the connection manager of the database to migrate
+     * @param mode              the transaction granularity of the run
+     * @return the run context, to be closed when the run finishes
+     * @throws RuntimeException if the connection cannot be established
+     */
+    public static MigrationRunContext open(ConnectionManager connectionManager, TransactionMode mode) {
+        return open(connectionManager, mode, null, MigrationLock.disabled());
+    }
+
+    /**
+     * Opens a run on a new dedicated connection with auto-commit disabled, reading the data of
+     * {@link CopyBlock copy blocks} from the given source.
+     *
+     * @param connectionManager the connection manager of the database to migrate
+     * @param mode              the transaction granularity of the run
+     * @param source            the source the migrations were read from, or {@code null} for the classpath
+     * @param lock              the migration lock the run executes under, checked before every commit
+     * @return the run context, to be closed when the run finishes
+     * @throws RuntimeException if the connection cannot be established
+     */
+    public static MigrationRunContext open(ConnectionManager connectionManager, TransactionMode mode,
+                                           MigrationSource source, MigrationLock lock) {
+        Connection connection = connectionManager.openConnection();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            throw new RuntimeException("Unable to start the migration transaction", e);
+        }
+        log.debug("Migration run started on a dedicated connection in transaction mode {}", mode);
+        return new MigrationRunContext(connection, mode, source, lock);
+    }
+
+    /**
+     * Returns the connection of the run.
+     *
+     * @return the connection, which must not be closed by the caller
+     */
+    public Connection connection() {
+        return connection;
+    }
+
+    /**
+     * Resolves a migration file of the run to the location of its content, for example to read copy data.
+     *
+     * @param fileName the name of the migration file
+     * @return the location of the file, or {@code null} if it does not exist
+     */
+    public URL resolve(String fileName) {
+        return source != null
+                ? source.resolve(fileName)
+                : MigrationRunContext.class.getClassLoader().getResource(fileName);
+    }
+
+    /**
+     * Returns the history changes of the run that have not been written yet.
+     *
+     * @return the history writer of the run
+     */
+    public HistoryWriter history() {
+        return historyWriter;
+    }
+
+    /**
+     * Returns the attempts of the run that were retried by the {@link LockRetryPolicy}, in execution order.
+     *
+     * @return the modifiable list of recorded attempts
+     */
+    public List<LockRetryAttempt> retryAttempts() {
+        return retryAttempts;
+    }
+
+    /**
+     * Writes the pending history changes and commits the transaction of the run, after checking that the run still
+     * holds its migration lock.
+     *
+     * @throws SQLException if the history cannot be written or the transaction cannot be committed
+     * @throws RuntimeException if the migration lock was lost
+     */
+    public void commit() throws SQLException {
+        lock.ensureHeld();
+        historyWriter.flush(connection);
+        connection.commit();
+    }
+
+    /**
+     * Executes one migration or rollback of the run according to the transaction mode.
+     *
+     * @param migration the migration the step executes
+     * @param step      the execution of the migration, which records its history change in this context
+     * @throws SQLException if the step fails; with a savepoint, the work of the step is already rolled back
+     */
+    public void step(ParsedMigration migration, Step step) throws SQLException {
+        if (mode == TransactionMode.SAVEPOINT_PER_MIGRATION && !connection.getAutoCommit()
+                && migration.directives().transactional()) {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                step.execute();
+                connection.releaseSavepoint(savepoint);
+            } catch (SQLException | RuntimeException e) {
+                failedMigration = migration;
+                log.info("Rolling back to the savepoint of {}", migration.fileName());
+                try {
+                    connection.rollback(savepoint);
+                    rolledBackToSavepoint = true;
+                } catch (SQLException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                }
+                throw e;
+            }
+            return;
+        }
+
+        try {
+            step.execute();
+        } catch (SQLException | RuntimeException e) {
+            failedMigration = migration;
+            throw e;
+        }
+        if (mode == TransactionMode.PER_MIGRATION && !connection.getAutoCommit()) {
+            commit();
+        }
+    }
+
+    /**
+     * Ends a failed run. The transaction is rolled back and the history changes that have not been written are
+     * forgotten, except in {@link TransactionMode#SAVEPOINT_PER_MIGRATION} after a failed step: the failed step was
+     * already rolled back to its savepoint, so the steps before it are committed, unless the migration lock was lost.
+     *
+     * @throws SQLException if the transaction cannot be rolled back or committed
+     */
+    public void abort() throws SQLException {
+        if (rolledBackToSavepoint && lock.isHeld()) {
+            log.info("Committing {} migrations completed before the failure", historyWriter.pendingCount());
+            commit();
+            return;
+        }
+        if (rolledBackToSavepoint) {
+            log.warn("The migration lock was lost; rolling back the migrations completed before the failure");
+        }
+        if (historyWriter.pendingCount() > 0) {
+            log.info("Discarding {} unwritten history changes", historyWriter.pendingCount());
+        }
+        historyWriter.clear();
+        connection.rollback();
+    }
+
+    /**
+     * Records the migration whose step failed with {@code success = false} and commits the entry on its own, so the
+     * failure shows in the migration status. Must be called after {@link #abort()}; does nothing if no step failed.
+     *
+     * @throws SQLException if the history entry cannot be written
+     * @throws RuntimeException if the migration lock was lost
+     */
+    public void recordFailure() throws SQLException {
+        if (failedMigration == null) {
+            return;
+        }
+        log.info("Recording failed migration {} in history", failedMigration.fileName());
+        historyWriter.recordFailed(failedMigration);
+        commit();
+    }
+
+    /**
+     * Closes the connection of the run. Work that was not committed is rolled back by the server.
+     */
+    @Override
+    public void close() {
+        closeQuietly(connection);
+    }
+
+    /**
+     * Execution of one migration or rollback.
+     */
+    @FunctionalInterface
+    public interface Step {
+        /**
+         * Executes the step.
+         *
+         * @throws SQLException if a database error occurs
+         */
+        void execute() throws SQLException;
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Unable to close the migration run connection", e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package by.eugene.maven.migrations;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * The SQL statements of one section ({@code --migration--} or {@code --rollback--}) of a migration file.
+ * <p>
+ * A section is either held in memory or streamed. Streamed sections belong to files above the configured
+ * streaming threshold or to a precompiled migration bundle: only their statement count is kept, and every
+ * {@link #open()} reads the statements again from their source (for files, the memory-mapped file through a
+ * {@link SqlStatementTokenizer}), so executing them needs memory for one statement at a time regardless of the
+ * file size.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationSection section = migration.upStatements();
+ * try (StatementCursor cursor = section.open()) {
+ *     cursor.forEachRemaining(sql -&gt; ...);
+ * }
+ * </pre>
+ */
+public final class MigrationSection {
+    private static final MigrationSection EMPTY = new MigrationSection(List.of(), null, 0);
+
+    private final List<String> statements;
+    private final Supplier<StatementCursor> opener;
+    private final int size;
+
+    private MigrationSection(List<String> statements, Supplier<StatementCursor> opener, int size) {
+        this.statements = statements;
+        this.opener = opener;
+        this.size = size;
+    }
+
+    /**
+     * Creates an in-memory section.
+     *
+     * @param statements the SQL statements of the section
+     * @return the section
+     */
+    public static MigrationSection of(List<String> statements) {
+        return statements.isEmpty() ? EMPTY : new MigrationSection(List.copyOf(statements), null, statements.size());
+    }
+
+    /**
+     * Creates a section that is re-read from a migration file on every {@link #open()}.
+     *
+     * @param file      the migration file on the filesystem
+     * @param delimiter the delimiter that starts the section in the file
+     * @param size      the number of statements in the section
+     * @return the section
+     */
+    public static MigrationSection streamed(Path file, String delimiter, int size) {
+        return new MigrationSection(null, () -> openFile(file, delimiter), size);
+    }
+
+    /**
+     * Creates a section whose statements are produced by the given opener on every {@link #open()}.
+     *
+     * @param opener the function opening a new cursor over the statements
+     * @param size   the number of statements in the section
+     * @return the section
+     */
+    public static MigrationSection streamed(Supplier<StatementCursor> opener, int size) {
+        return new MigrationSection(null, opener, size);
+    }
+
+    /**
+     * Returns the number of statements in the section.
+     *
+     * @return the number of statements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the section is re-read from its source instead of being held in memory.
+     *
+     * @return {@code true} if the section is streamed
+     */
+    public boolean isStreamed() {
+        return statements == null;
+    }
+
+    /**
+     * Opens a cursor over the statements of the section.
+     *
+     * @return a cursor that must be closed after use
+     * @throws UncheckedIOException if a streamed section cannot be opened
+     */
+    public StatementCursor open() {
+        if (statements != null) {
+            Iterator<String> iterator = statements.iterator();
+            return new StatementCursor() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return iterator.next();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        return opener.get();
+    }
+
+    /**
+     * Returns all statements of the section as a list.
+     * <p>
+     * For streamed sections this loads the whole section into memory and should be avoided for large files.
+     * </p>
+     *
+     * @return the statements of the section
+     */
+    public List<String> toList() {
+        if (statements != null) {
+            return statements;
+        }
+        List<String> result = new ArrayList<>(size);
+        try (StatementCursor cursor = open()) {
+            cursor.forEachRemaining(result::add);
+        }
+        return result;
+    }
+
+    private static StatementCursor openFile(Path file, String delimiter) {
+        try {
+            return new StreamedCursor(new SqlStatementTokenizer(new MappedFileReader(file),
+                    MigrationFileReader.SECTION_DELIMITERS, 1), delimiter);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open migration file " + file, e);
+        }
+    }
+
+    private static final class StreamedCursor implements StatementCursor {
+        private final SqlStatementTokenizer tokenizer;
+        private final String delimiter;
+        private String next;
+        private boolean finished;
+
+        private StreamedCursor(SqlStatementTokenizer tokenizer, String delimiter) {
+            this.tokenizer = tokenizer;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !finished) {
+                if (!tokenizer.hasNext()) {
+                    finished = true;
+                    break;
+                }
+                String sql = tokenizer.next();
+                if (delimiter.equals(tokenizer.section())) {
+                    next = sql;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            try {
+                tokenizer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
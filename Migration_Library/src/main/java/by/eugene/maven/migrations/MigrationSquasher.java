@@ -0,0 +1,146 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.migrations.source.MigrationSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Squashes a range of migrations into a single baseline migration file.
+ * <p>
+ * A baseline is a regular migration file whose header declares {@code baseline=true}. Its migration section holds
+ * the statements of every squashed migration in version order, its rollback section the rollback statements in
+ * reverse order. When the history table is empty, {@code migrate} applies the latest baseline instead of the
+ * migrations it replaces, records one history row for it and continues with the migrations above its version, so
+ * provisioning a fresh database no longer replays the whole project history. Databases that already have history
+ * ignore baselines, so the squashed files can stay in place until every environment is past the baseline version.
+ * </p>
+ * <p>
+ * An earlier baseline within the squashed range is included in place of the migrations it replaces. The baseline
+ * is non-transactional when any squashed migration is; other execution directives are not carried over.
+ * </p>
+ * <p>
+ * {@link CopyBlock Copy blocks} are carried over with their inline data copied from the squashed file. Side-car
+ * files keep their relative path, so the baseline should be written to the directory of the squashed migrations.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * Path baseline = MigrationSquasher.squash(index, 40, Path.of("src/main/resources/migrations/baseline-40.sql"));
+ * </pre>
+ */
+@Slf4j
+public final class MigrationSquasher {
+
+    private MigrationSquasher() {
+    }
+
+    /**
+     * Writes a baseline replacing every migration up to the given version.
+     *
+     * @param index          the loaded migrations
+     * @param throughVersion the highest version included in the baseline, which becomes the baseline version
+     * @param output         the baseline file to write
+     * @return the written file
+     * @throws RuntimeException if there is nothing to squash or the file cannot be written
+     */
+    public static Path squash(MigrationIndex index, int throughVersion, Path output) {
+        return squash(index, throughVersion, output, null);
+    }
+
+    /**
+     * Writes a baseline replacing every migration up to the given version, reading inline copy data from the given
+     * source.
+     *
+     * @param index          the loaded migrations
+     * @param throughVersion the highest version included in the baseline, which becomes the baseline version
+     * @param output         the baseline file to write
+     * @param source         the source the migrations were read from, or {@code null} for the classpath
+     * @return the written file
+     * @throws RuntimeException if there is nothing to squash or the file cannot be written
+     */
+    public static Path squash(MigrationIndex index, int throughVersion, Path output, MigrationSource source) {
+        ParsedMigration previous = index.latestBaseline(throughVersion);
+        List<ParsedMigration> squashed = new ArrayList<>();
+        if (previous != null) {
+            squashed.add(previous);
+        }
+        squashed.addAll(index.range(previous == null ? Integer.MIN_VALUE : previous.version(), throughVersion));
+        if (squashed.isEmpty() || previous != null && squashed.size() == 1) {
+            log.error("No migrations up to version {} to squash", throughVersion);
+            throw new RuntimeException("No migrations up to version %d to squash".formatted(throughVersion));
+        }
+
+        boolean transactional = squashed.stream().allMatch(migration -> migration.directives().transactional());
+        if (!transactional) {
+            log.warn("Squashed migrations include non-transactional migrations; the baseline runs outside of a transaction");
+        }
+
+        try {
+            Path parent = output.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temporary = Files.createTempFile(parent, "baseline", ".tmp");
+            try (Writer out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                out.write("--migration %d %s=true%s--\n".formatted(throughVersion, ParsedMigration.BASELINE_ATTRIBUTE,
+                        transactional ? "" : " transactional=false"));
+                out.write("\n" + MigrationFileReader.MIGRATION_DELIMITER + "\n");
+                for (ParsedMigration migration : squashed) {
+                    writeSection(out, migration, migration.upStatements(), source);
+                }
+                out.write(MigrationFileReader.ROLLBACK_DELIMITER + "\n");
+                for (int i = squashed.size() - 1; i >= 0; i--) {
+                    writeSection(out, squashed.get(i), squashed.get(i).downStatements(), source);
+                }
+            }
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Unable to write baseline file: {}", output, e);
+            throw new RuntimeException("Unable to write baseline file " + output, e);
+        }
+
+        log.info("Squashed {} migrations into baseline version {}: {}", squashed.size(), throughVersion, output);
+        return output;
+    }
+
+    private static void writeSection(Writer out, ParsedMigration migration, MigrationSection section,
+                                     MigrationSource source) throws IOException {
+        out.write("-- from %s (version %d)\n".formatted(migration.fileName(), migration.version()));
+        try (StatementCursor cursor = section.open()) {
+            while (cursor.hasNext()) {
+                String sql = cursor.next();
+                if (CopyBlock.isCopy(sql)) {
+                    writeCopy(out, migration, CopyBlock.parse(sql, migration.fileName()), source);
+                } else {
+                    out.write(sql);
+                    out.write(";\n\n");
+                }
+            }
+        }
+    }
+
+    private static void writeCopy(Writer out, ParsedMigration migration, CopyBlock block, MigrationSource source)
+            throws IOException {
+        out.write(block.marker());
+        out.write("\n");
+        if (block.file() != null) {
+            return;
+        }
+        URL url = source != null
+                ? source.resolve(migration.fileName())
+                : MigrationSquasher.class.getClassLoader().getResource(migration.fileName());
+        try (InputStream data = block.openData(url)) {
+            new InputStreamReader(data, StandardCharsets.UTF_8).transferTo(out);
+        }
+        out.write(CopyBlock.DATA_TERMINATOR + "\n\n");
+    }
+}
@@ -0,0 +1,95 @@
+package by.eugene.maven.migrations;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the migration state of the database, as shown by the {@code info} command.
+ * <p>
+ * A status is built in memory from the loaded migrations and one {@link HistorySnapshot}. Drift is detected by
+ * comparing the checksum recorded for every applied migration with the checksum of the loaded migration, so no
+ * migration file is read again. A database known to be up to date gets its status from the history alone (see
+ * {@link #upToDate(HistorySnapshot)}). {@link MigrationManager} caches the status until a migrate or rollback run
+ * invalidates it.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationStatus status = migrationManager.getStatus();
+ * System.out.println(status.currentVersion() + " (" + status.pendingVersions().size() + " pending)");
+ * </pre>
+ *
+ * @param currentVersion  the highest applied version, {@code 0} if no migration has been applied
+ * @param latestVersion   the highest version among the loaded migrations
+ * @param appliedCount    the number of applied migrations
+ * @param pendingVersions the versions of the loaded migrations that have not been applied
+ * @param failedVersions  the versions whose history entry is marked as failed
+ * @param driftedFiles    the applied migration files whose content changed after they were applied
+ * @param loadedAt        the time the status was read from the database
+ */
+public record MigrationStatus(int currentVersion,
+                              int latestVersion,
+                              int appliedCount,
+                              List<Integer> pendingVersions,
+                              List<Integer> failedVersions,
+                              List<String> driftedFiles,
+                              Instant loadedAt) {
+
+    /**
+     * Creates a new status, defensively copying the lists.
+     */
+    public MigrationStatus {
+        pendingVersions = List.copyOf(pendingVersions);
+        failedVersions = List.copyOf(failedVersions);
+        driftedFiles = List.copyOf(driftedFiles);
+    }
+
+    /**
+     * Builds the status from the loaded migrations and a snapshot of the history table.
+     *
+     * @param index   the loaded migrations
+     * @param history the snapshot of the history table
+     * @return the status
+     */
+    public static MigrationStatus of(MigrationIndex index, HistorySnapshot history) {
+        List<Integer> pending = index.pending(history).stream().map(ParsedMigration::version).toList();
+        List<String> drifted = new ArrayList<>();
+        Map<String, Long> checksums = history.checksums();
+        for (List<ParsedMigration> migrations : List.of(index.all(), index.baselines())) {
+            for (ParsedMigration migration : migrations) {
+                Long recorded = checksums.get(migration.fileName());
+                if (recorded != null && recorded != migration.checksum()) {
+                    drifted.add(migration.fileName());
+                }
+            }
+        }
+
+        return new MigrationStatus(history.currentVersion(), index.latestVersion(), history.size(), pending,
+                Arrays.stream(history.failedVersions()).boxed().toList(), drifted, Instant.now());
+    }
+
+    /**
+     * Builds the status of a database whose stored {@link MigrationDigest} matches the local migrations, without
+     * loading them: every local migration is applied unchanged, so none is pending or drifted and the latest local
+     * version is the current version.
+     *
+     * @param history the snapshot of the history table
+     * @return the status
+     */
+    public static MigrationStatus upToDate(HistorySnapshot history) {
+        return new MigrationStatus(history.currentVersion(), history.currentVersion(), history.size(), List.of(),
+                Arrays.stream(history.failedVersions()).boxed().toList(), List.of(), Instant.now());
+    }
+
+    /**
+     * Returns whether every loaded migration is applied, none failed and none drifted.
+     *
+     * @return {@code true} if the database is up to date
+     */
+    public boolean isUpToDate() {
+        return pendingVersions.isEmpty() && failedVersions.isEmpty() && driftedFiles.isEmpty();
+    }
+}
@@ -0,0 +1,146 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.migrations.source.MigrationSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Detects applied migration files that were changed or removed after they were applied.
+ * <p>
+ * The validator compares the checksums recorded in the history table with the CRC32C checksums of the current
+ * migration files. Files are hashed without being parsed, concurrently on a dedicated {@link ForkJoinPool} when the
+ * configured parallelism is greater than one, and only files that have a recorded checksum are read. History rows
+ * written before checksums were recorded are reported as unverified rather than as problems.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationValidator validator = new MigrationValidator(MigrationSource.of("migrations"), 8);
+ * MigrationValidator.Report report = validator.validate(appliedChecksums);
+ * report.problems().forEach(System.out::println);
+ * </pre>
+ */
+@Slf4j
+public class MigrationValidator {
+    private final MigrationSource source;
+    private final int parallelism;
+
+    /**
+     * Creates a validator.
+     *
+     * @param source      the source of the current migration files
+     * @param parallelism the number of files hashed concurrently; {@code 1} hashes the files serially
+     */
+    public MigrationValidator(MigrationSource source, int parallelism) {
+        this.source = source;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Compares the recorded checksums of the applied migrations with the current migration files.
+     *
+     * @param appliedChecksums the recorded checksum of every applied migration by file name; a {@code null} checksum
+     *                         marks a migration applied before checksums were recorded
+     * @return the validation report
+     * @throws RuntimeException if the migration files cannot be listed
+     */
+    public Report validate(Map<String, Long> appliedChecksums) {
+        long start = System.nanoTime();
+        Set<String> currentFiles = new HashSet<>(source.list());
+
+        List<String> problems = new ArrayList<>();
+        List<String> filesToHash = new ArrayList<>();
+        int unverified = 0;
+        for (Map.Entry<String, Long> applied : appliedChecksums.entrySet()) {
+            if (!currentFiles.contains(applied.getKey())) {
+                problems.add("%s: applied migration file no longer exists".formatted(applied.getKey()));
+            } else if (applied.getValue() == null) {
+                unverified++;
+            } else {
+                filesToHash.add(applied.getKey());
+            }
+        }
+
+        List<String> mismatches = parallelism > 1 && filesToHash.size() > 1
+                ? compareInParallel(filesToHash, appliedChecksums)
+                : filesToHash.stream().map(file -> compare(file, appliedChecksums.get(file))).toList();
+        for (String mismatch : mismatches) {
+            if (mismatch != null) {
+                problems.add(mismatch);
+            }
+        }
+        problems.sort(null);
+
+        Report report = new Report(filesToHash.size(), unverified, List.copyOf(problems));
+        log.info("Validated {} applied migrations in {} ms: {} problems, {} without recorded checksum",
+                report.verified(), (System.nanoTime() - start) / 1_000_000, problems.size(), unverified);
+        return report;
+    }
+
+    private List<String> compareInParallel(List<String> files, Map<String, Long> appliedChecksums) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> files.parallelStream()
+                    .map(file -> compare(file, appliedChecksums.get(file)))
+                    .toList()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while validating migration files", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while validating migration files", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the problem found for a file, or {@code null} if its content still matches the recorded checksum.
+     */
+    private String compare(String fileName, long appliedChecksum) {
+        URL url = source.resolve(fileName);
+        if (url == null) {
+            return "%s: applied migration file no longer exists".formatted(fileName);
+        }
+        try {
+            long checksum = MigrationFileReader.checksum(url);
+            if (checksum != appliedChecksum) {
+                log.warn("Checksum mismatch for applied migration {}: recorded {}, current {}",
+                        fileName, appliedChecksum, checksum);
+                return "%s: file was modified after it was applied (recorded checksum %d, current checksum %d)"
+                        .formatted(fileName, appliedChecksum, checksum);
+            }
+            return null;
+        } catch (IOException e) {
+            log.error("Unable to read migration file: {}", fileName, e);
+            return "%s: unable to read file: %s".formatted(fileName, e.getMessage());
+        }
+    }
+
+    /**
+     * Result of a validation.
+     *
+     * @param verified   the number of applied migrations whose checksum was compared
+     * @param unverified the number of applied migrations without a recorded checksum
+     * @param problems   the changed, missing or unreadable migration files
+     */
+    public record Report(int verified, int unverified, List<String> problems) {
+
+        /**
+         * Returns whether no problems were found.
+         *
+         * @return {@code true} if every verified migration still matches its file
+         */
+        public boolean isValid() {
+            return problems.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package by.eugene.maven.migrations;
+
+import java.util.Map;
+
+/**
+ * Immutable representation of a migration file that has been read and parsed once.
+ * <p>
+ * A {@code ParsedMigration} holds everything the migration tool needs to know about a single migration file:
+ * its version, the statements of the {@code --migration--} and {@code --rollback--} sections, the metadata
+ * declared in the header line and a checksum of the raw file content. Instances are produced by
+ * {@link MigrationFileReader#readMigration(String)} and consumed by {@link MigrationManager} and
+ * {@link MigrationExecutor}, so a file never has to be opened more than once per run.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * ParsedMigration migration = MigrationFileReader.readMigration("migrations/23-11-2024-1.sql");
+ * int version = migration.version();
+ * MigrationSection statements = migration.upStatements();
+ * </pre>
+ *
+ * @param version        the migration version declared in the header line
+ * @param fileName       the classpath location of the migration file
+ * @param upStatements   the SQL statements of the migration section
+ * @param downStatements the SQL statements of the rollback section
+ * @param headers        additional {@code key=value} metadata and execution directives declared in the header line
+ * @param checksum       the CRC32C checksum of the raw file content
+ * @see MigrationSection
+ */
+public record ParsedMigration(int version,
+                              String fileName,
+                              MigrationSection upStatements,
+                              MigrationSection downStatements,
+                              Map<String, String> headers,
+                              long checksum) {
+    /**
+     * The header attribute marking a baseline migration, for example {@code --migration 40 baseline=true--}.
+     */
+    public static final String BASELINE_ATTRIBUTE = "baseline";
+
+    /**
+     * Creates a new parsed migration, defensively copying the header map.
+     */
+    public ParsedMigration {
+        headers = Map.copyOf(headers);
+    }
+
+    /**
+     * Returns the execution directives declared in the header line.
+     *
+     * @return the execution directives
+     * @throws by.eugene.maven.exceptions.MigrationValidationException if a directive has an invalid value
+     * @see MigrationDirectives
+     */
+    public MigrationDirectives directives() {
+        return MigrationDirectives.from(headers, fileName);
+    }
+
+    /**
+     * Returns whether the migration is a baseline, which replaces every migration up to its version when the
+     * history table is empty (see {@link MigrationSquasher}).
+     *
+     * @return {@code true} if the header line declares {@code baseline=true}
+     */
+    public boolean isBaseline() {
+        return Boolean.parseBoolean(headers.get(BASELINE_ATTRIBUTE));
+    }
+}
@@ -0,0 +1,528 @@
+package by.eugene.maven.migrations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Streaming, quote-aware splitter of PostgreSQL scripts into single statements.
+ * <p>
+ * The tokenizer reads its input character by character and emits one statement at a time. A semicolon only ends
+ * a statement when it appears outside of string literals ({@code '...'}, {@code E'...'}), quoted identifiers
+ * ({@code "..."}), dollar-quoted bodies ({@code $$...$$}, {@code $tag$...$tag$}), line comments ({@code -- ...})
+ * and nested block comments ({@code /* ... *&#47;}). Comments that precede a statement and comments that trail its
+ * last token are dropped; comments inside a statement are kept as they are.
+ * </p>
+ * <p>
+ * A line comment whose text is exactly one of the configured section markers (for example {@code --rollback--})
+ * ends the current statement and switches the current section. {@link #section()} reports the section the last
+ * returned statement belongs to.
+ * </p>
+ * <p>
+ * A tokenizer for migration files, created with a first line number, also recognises {@link CopyBlock} markers
+ * ({@code --copy ...--}): the marker ends the current statement and is returned as a statement of its own. Inline
+ * copy data following the marker, up to a line holding only {@code \.}, is skipped without being buffered; its
+ * first line number and length in UTF-8 bytes are appended to the returned marker as {@code line} and
+ * {@code bytes} attributes.
+ * </p>
+ * <p>
+ * Only the statement being assembled is kept in memory, so the memory footprint is bounded by the largest
+ * statement rather than by the size of the script.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * try (SqlStatementTokenizer tokenizer = new SqlStatementTokenizer(reader, Set.of("--rollback--"))) {
+ *     while (tokenizer.hasNext()) {
+ *         String sql = tokenizer.next();
+ *         String section = tokenizer.section();
+ *     }
+ * }
+ * </pre>
+ */
+public class SqlStatementTokenizer implements Iterator<String>, Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final Set<String> sectionMarkers;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder statement = new StringBuilder();
+    private final Set<String> sectionsSeen = new HashSet<>();
+    private final boolean copyBlocks;
+
+    private int bufferPosition;
+    private int bufferLimit;
+    private int pushedBack = EOF;
+    private int line;
+
+    private boolean hasSql;
+    private int sqlEnd;
+    private int previous = EOF;
+
+    private String currentSection;
+    private String pendingSection;
+    private String nextSection;
+    private String returnedSection;
+    private String next;
+    private String pendingCopy;
+    private boolean finished;
+
+    /**
+     * Creates a tokenizer that does not recognise any section markers.
+     *
+     * @param reader the source of the SQL script
+     */
+    public SqlStatementTokenizer(Reader reader) {
+        this(reader, Set.of());
+    }
+
+    /**
+     * Creates a tokenizer that switches sections on the given marker comments.
+     *
+     * @param reader         the source of the SQL script
+     * @param sectionMarkers line comments, including the leading {@code --}, that start a new section
+     */
+    public SqlStatementTokenizer(Reader reader, Set<String> sectionMarkers) {
+        this(reader, sectionMarkers, false, 1);
+    }
+
+    /**
+     * Creates a tokenizer for a migration file that switches sections on the given marker comments and recognises
+     * copy blocks.
+     *
+     * @param reader         the source of the SQL script
+     * @param sectionMarkers line comments, including the leading {@code --}, that start a new section
+     * @param firstLine      the line number in the file of the first line the reader returns
+     */
+    public SqlStatementTokenizer(Reader reader, Set<String> sectionMarkers, int firstLine) {
+        this(reader, sectionMarkers, true, firstLine);
+    }
+
+    private SqlStatementTokenizer(Reader reader, Set<String> sectionMarkers, boolean copyBlocks, int firstLine) {
+        this.reader = reader;
+        this.sectionMarkers = sectionMarkers;
+        this.copyBlocks = copyBlocks;
+        this.line = firstLine;
+    }
+
+    /**
+     * Checks whether another statement is available, reading ahead as far as needed to find it.
+     *
+     * @return {@code true} if {@link #next()} will return a statement
+     * @throws UncheckedIOException if the underlying reader fails
+     * @throws RuntimeException if the script ends inside a string literal, identifier or block comment
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = advance();
+            finished = next == null;
+        }
+        return next != null;
+    }
+
+    /**
+     * Returns the next statement without its terminating semicolon and without surrounding whitespace.
+     *
+     * @return the next SQL statement
+     * @throws NoSuchElementException if there are no more statements
+     */
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String result = next;
+        returnedSection = nextSection;
+        next = null;
+        return result;
+    }
+
+    /**
+     * Returns the section marker that preceded the statement last returned by {@link #next()}.
+     *
+     * @return the section marker, or {@code null} if the statement appeared before any marker
+     */
+    public String section() {
+        return returnedSection;
+    }
+
+    /**
+     * Returns the section markers encountered so far, including markers of sections without statements.
+     *
+     * @return the markers read so far
+     */
+    public Set<String> sectionsSeen() {
+        return Set.copyOf(sectionsSeen);
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException if the reader cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String advance() {
+        try {
+            if (pendingCopy != null) {
+                return takeCopy();
+            }
+            if (pendingSection != null) {
+                currentSection = pendingSection;
+                pendingSection = null;
+            }
+
+            int c;
+            while ((c = read()) != EOF) {
+                switch (c) {
+                    case ';' -> {
+                        if (hasSql) {
+                            return completeStatement();
+                        }
+                        resetStatement();
+                    }
+                    case '\'' -> quoted('\'', isEscapeStringPrefix());
+                    case '"' -> quoted('"', false);
+                    case '$' -> dollar();
+                    case '-' -> {
+                        if (peek() == '-') {
+                            read();
+                            if (lineComment()) {
+                                return completeStatement();
+                            }
+                            if (pendingCopy != null) {
+                                return takeCopy();
+                            }
+                        } else {
+                            appendSql(c);
+                        }
+                    }
+                    case '/' -> {
+                        if (peek() == '*') {
+                            read();
+                            blockComment();
+                        } else {
+                            appendSql(c);
+                        }
+                    }
+                    default -> {
+                        if (Character.isWhitespace(c)) {
+                            if (hasSql) {
+                                statement.append((char) c);
+                            }
+                            previous = c;
+                        } else {
+                            appendSql(c);
+                        }
+                    }
+                }
+            }
+
+            if (hasSql) {
+                return completeStatement();
+            }
+            if (pendingSection != null) {
+                currentSection = pendingSection;
+                pendingSection = null;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading SQL script", e);
+        }
+    }
+
+    private String completeStatement() {
+        String sql = statement.substring(0, sqlEnd);
+        nextSection = currentSection;
+        resetStatement();
+        return sql;
+    }
+
+    private String takeCopy() {
+        String copy = pendingCopy;
+        pendingCopy = null;
+        nextSection = currentSection;
+        return copy;
+    }
+
+    private void resetStatement() {
+        statement.setLength(0);
+        hasSql = false;
+        sqlEnd = 0;
+        previous = EOF;
+    }
+
+    private void appendSql(int c) {
+        statement.append((char) c);
+        hasSql = true;
+        sqlEnd = statement.length();
+        previous = c;
+    }
+
+    private boolean isEscapeStringPrefix() {
+        int length = statement.length();
+        if (previous != 'E' && previous != 'e' || sqlEnd != length) {
+            return false;
+        }
+        return length == 1 || !isIdentifierPart(statement.charAt(length - 2));
+    }
+
+    private void quoted(char quote, boolean backslashEscapes) throws IOException {
+        appendSql(quote);
+        int c;
+        while ((c = read()) != EOF) {
+            statement.append((char) c);
+            if (backslashEscapes && c == '\\') {
+                int escaped = read();
+                if (escaped == EOF) {
+                    break;
+                }
+                statement.append((char) escaped);
+            } else if (c == quote) {
+                if (peek() == quote) {
+                    statement.append((char) read());
+                } else {
+                    sqlEnd = statement.length();
+                    previous = c;
+                    return;
+                }
+            }
+        }
+        throw new RuntimeException("Unterminated %s at end of SQL script"
+                .formatted(quote == '"' ? "quoted identifier" : "string literal"));
+    }
+
+    /**
+     * Handles a {@code $} outside of quotes: either the start of a dollar-quoted body or an ordinary character
+     * such as a positional parameter ({@code $1}) or part of an identifier.
+     */
+    private void dollar() throws IOException {
+        boolean startsTag = previous == EOF || !isIdentifierPart(previous);
+        int tagStart = statement.length();
+        appendSql('$');
+        if (!startsTag) {
+            return;
+        }
+
+        int c = read();
+        if (c != EOF && Character.isDigit(c)) {
+            appendSql(c);
+            return;
+        }
+        while (c != EOF && c != '$' && isIdentifierPart(c)) {
+            statement.append((char) c);
+            c = read();
+        }
+        if (c != '$') {
+            sqlEnd = statement.length();
+            previous = statement.charAt(sqlEnd - 1);
+            unread(c);
+            return;
+        }
+        statement.append('$');
+        int tagLength = statement.length() - tagStart;
+
+        while ((c = read()) != EOF) {
+            statement.append((char) c);
+            if (c == '$' && closesDollarQuote(tagStart, tagLength)) {
+                sqlEnd = statement.length();
+                previous = '$';
+                return;
+            }
+        }
+        throw new RuntimeException("Unterminated dollar-quoted string %s at end of SQL script"
+                .formatted(statement.substring(tagStart, tagStart + tagLength)));
+    }
+
+    /**
+     * Reads ahead after a {@code $} inside a dollar-quoted body and reports whether it closes the body.
+     * A mismatching {@code $} is pushed back because it may itself start the closing tag.
+     */
+    private boolean closesDollarQuote(int tagStart, int tagLength) throws IOException {
+        for (int i = 1; i < tagLength; i++) {
+            int c = read();
+            if (c != statement.charAt(tagStart + i)) {
+                if (c == '$') {
+                    unread(c);
+                } else if (c != EOF) {
+                    statement.append((char) c);
+                }
+                return false;
+            }
+            statement.append((char) c);
+        }
+        return true;
+    }
+
+    /**
+     * Consumes a {@code --} comment up to the end of the line.
+     *
+     * @return {@code true} if the comment was a section or copy block marker that ends a pending statement
+     */
+    private boolean lineComment() throws IOException {
+        int start = statement.length();
+        statement.append("--");
+        int c;
+        while ((c = read()) != EOF && c != '\n') {
+            statement.append((char) c);
+        }
+
+        if (copyBlocks && statement.indexOf(CopyBlock.MARKER_PREFIX, start) == start) {
+            String marker = statement.substring(start).trim();
+            if (marker.endsWith("--")) {
+                statement.setLength(start);
+                pendingCopy = CopyBlock.hasInlineData(marker) ? skipCopyData(marker) : marker;
+                if (hasSql) {
+                    return true;
+                }
+                resetStatement();
+                return false;
+            }
+        }
+
+        String marker = matchMarker(start);
+        if (marker != null) {
+            sectionsSeen.add(marker);
+            statement.setLength(start);
+            if (hasSql) {
+                pendingSection = marker;
+                return true;
+            }
+            currentSection = marker;
+            resetStatement();
+            return false;
+        }
+
+        if (hasSql) {
+            statement.append('\n');
+        } else {
+            statement.setLength(start);
+        }
+        previous = '\n';
+        return false;
+    }
+
+    /**
+     * Skips the inline data of a copy block up to its terminator line and returns the marker with the position of
+     * the data appended.
+     */
+    private String skipCopyData(String marker) throws IOException {
+        int dataLine = line;
+        long bytes = 0;
+        while (true) {
+            long lineBytes = 0;
+            int length = 0;
+            boolean terminator = true;
+            int c;
+            while ((c = read()) != EOF && c != '\n') {
+                lineBytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate((char) c) ? 2 : 3;
+                if (terminator) {
+                    terminator = length < 2 && c == CopyBlock.DATA_TERMINATOR.charAt(length) || length == 2 && c == '\r';
+                }
+                length++;
+            }
+            if (terminator && (length == 2 || length == 3)) {
+                break;
+            }
+            if (c == EOF) {
+                throw new RuntimeException("Unterminated copy data of %s; expected a line %s"
+                        .formatted(marker, CopyBlock.DATA_TERMINATOR));
+            }
+            bytes += lineBytes + 1;
+        }
+        return CopyBlock.annotate(marker, dataLine, bytes);
+    }
+
+    private String matchMarker(int start) {
+        int end = statement.length();
+        while (end > start && Character.isWhitespace(statement.charAt(end - 1))) {
+            end--;
+        }
+        for (String marker : sectionMarkers) {
+            if (marker.length() == end - start && statement.indexOf(marker, start) == start) {
+                return marker;
+            }
+        }
+        return null;
+    }
+
+    private void blockComment() throws IOException {
+        int start = statement.length();
+        statement.append("/*");
+        int depth = 1;
+        int c;
+        while ((c = read()) != EOF) {
+            statement.append((char) c);
+            if (c == '*' && peek() == '/') {
+                statement.append((char) read());
+                if (--depth == 0) {
+                    if (!hasSql) {
+                        statement.setLength(start);
+                    }
+                    previous = ' ';
+                    return;
+                }
+            } else if (c == '/' && peek() == '*') {
+                statement.append((char) read());
+                depth++;
+            }
+        }
+        throw new RuntimeException("Unterminated block comment at end of SQL script");
+    }
+
+    private static boolean isIdentifierPart(int c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != EOF) {
+            int c = pushedBack;
+            pushedBack = EOF;
+            if (c == '\n') {
+                line++;
+            }
+            return c;
+        }
+        if (bufferPosition == bufferLimit && !fill()) {
+            return EOF;
+        }
+        char c = buffer[bufferPosition++];
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        int c = read();
+        unread(c);
+        return c;
+    }
+
+    private void unread(int c) {
+        pushedBack = c;
+        if (c == '\n') {
+            line--;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int count;
+        do {
+            count = reader.read(buffer, 0, BUFFER_SIZE);
+        } while (count == 0);
+        bufferPosition = 0;
+        bufferLimit = Math.max(count, 0);
+        return count > 0;
+    }
+}
@@ -0,0 +1,30 @@
+package by.eugene.maven.migrations;
+
+import java.util.Iterator;
+
+/**
+ * Closeable iterator over the SQL statements of a {@link MigrationSection}.
+ * <p>
+ * A cursor over a streamed section holds an open file; it must be closed once the statements have been consumed,
+ * preferably with a try-with-resources block.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * try (StatementCursor cursor = migration.upStatements().open()) {
+ *     while (cursor.hasNext()) {
+ *         statement.addBatch(cursor.next());
+ *     }
+ * }
+ * </pre>
+ */
+public interface StatementCursor extends Iterator<String>, AutoCloseable {
+
+    /**
+     * Releases the resources held by the cursor.
+     *
+     * @throws java.io.UncheckedIOException if the underlying file cannot be closed
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,35 @@
+package by.eugene.maven.migrations;
+
+/**
+ * Transaction granularity of a migrate or rollback run.
+ * <p>
+ * The mode trades how long locks are held and how much WAL is written at once against the atomicity of the run.
+ * Migrations declared with {@code transactional=false} always run outside of any transaction and commit the work
+ * before them, whatever the mode.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * migration.transaction.mode=savepoint_per_migration
+ * </pre>
+ */
+public enum TransactionMode {
+    /**
+     * The whole run is one transaction: either every migration is applied or none is. Locks taken by a migration are
+     * held until the end of the run.
+     */
+    ALL_OR_NOTHING,
+
+    /**
+     * Every migration is committed on its own. A failure rolls back only the failing migration; the migrations before
+     * it stay applied and locks are released after each migration.
+     */
+    PER_MIGRATION,
+
+    /**
+     * The run is one transaction with a savepoint around every migration. A failure rolls back to the savepoint of the
+     * failing migration and commits the migrations before it, so the run keeps its single commit on success but does
+     * not lose the completed work on failure.
+     */
+    SAVEPOINT_PER_MIGRATION
+}
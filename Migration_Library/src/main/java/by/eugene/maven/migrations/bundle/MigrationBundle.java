@@ -0,0 +1,389 @@
+package by.eugene.maven.migrations.bundle;
+
+import by.eugene.maven.migrations.MigrationSection;
+import by.eugene.maven.migrations.ParsedMigration;
+import by.eugene.maven.migrations.StatementCursor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Precompiled, indexed binary bundle of a migration directory.
+ * <p>
+ * A bundle is produced at build time by {@link MigrationBundleCompiler} and holds every migration of a directory
+ * in one file: the statements of each section are stored as one deflate-compressed block, followed by an index with
+ * the version, checksum, file name, header metadata and the offset, length and statement count of every block.
+ * A fixed-size footer points to the index, so the bundle can be written in a single streaming pass.
+ * </p>
+ * <p>
+ * At runtime the bundle replaces listing and parsing the migration directory. Only the index is decoded when the
+ * bundle is loaded; statement blocks are read by their offset and inflated when a section is opened for execution,
+ * so the heap never holds more than the index and the statements being executed. A bundle inside a jar is first
+ * copied to a temporary file, which is deleted when the JVM exits. Offsets are 64-bit, so a bundle is not limited
+ * to 2 GB.
+ * </p>
+ *
+ * <p><b>Layout:</b></p>
+ * <pre>
+ * int magic, int formatVersion
+ * deflated section blocks ...            (each: repeated int length + UTF-8 statement)
+ * int count, count x index entry         (version, checksum, file name, headers, up and down block references)
+ * long indexOffset, int magic            (footer)
+ * </pre>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * URL bundle = classLoader.getResource(MigrationBundle.resourceName("migrations"));
+ * List&lt;ParsedMigration&gt; migrations = MigrationBundle.read(bundle);
+ * </pre>
+ */
+@Slf4j
+public final class MigrationBundle {
+    private static final int MAGIC = 0x4D474231;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final String RESOURCE_DIRECTORY = "META-INF/migrations/";
+    private static final String RESOURCE_EXTENSION = ".bundle";
+
+    private MigrationBundle() {
+    }
+
+    /**
+     * Returns the classpath location of the bundle compiled from the given migration directory.
+     *
+     * @param migrationDirectory the migration directory, for example {@code migrations}
+     * @return the classpath location of the bundle
+     */
+    public static String resourceName(String migrationDirectory) {
+        return RESOURCE_DIRECTORY + normalizeDirectory(migrationDirectory) + RESOURCE_EXTENSION;
+    }
+
+    /**
+     * Strips leading and trailing slashes from a migration directory name.
+     *
+     * @param migrationDirectory the migration directory
+     * @return the normalized directory name
+     */
+    public static String normalizeDirectory(String migrationDirectory) {
+        int start = 0;
+        int end = migrationDirectory.length();
+        while (start < end && migrationDirectory.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && migrationDirectory.charAt(end - 1) == '/') {
+            end--;
+        }
+        return migrationDirectory.substring(start, end);
+    }
+
+    /**
+     * Writes a bundle containing the given migrations.
+     *
+     * @param bundleFile the file to write
+     * @param migrations the migrations to include, in the order they should be listed
+     * @throws IOException if the bundle cannot be written
+     */
+    public static void write(Path bundleFile, List<ParsedMigration> migrations) throws IOException {
+        Files.createDirectories(bundleFile.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(bundleFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream channelStream = Channels.newOutputStream(channel);
+
+            DataOutputStream header = new DataOutputStream(channelStream);
+            header.writeInt(MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.flush();
+
+            List<long[]> blocks = new ArrayList<>(migrations.size());
+            for (ParsedMigration migration : migrations) {
+                long upOffset = channel.position();
+                writeBlock(channelStream, migration.upStatements());
+                long downOffset = channel.position();
+                writeBlock(channelStream, migration.downStatements());
+                blocks.add(new long[]{upOffset, downOffset - upOffset, downOffset, channel.position() - downOffset});
+            }
+
+            long indexOffset = channel.position();
+            DataOutputStream index = new DataOutputStream(new BufferedOutputStream(channelStream));
+            index.writeInt(migrations.size());
+            for (int i = 0; i < migrations.size(); i++) {
+                ParsedMigration migration = migrations.get(i);
+                long[] block = blocks.get(i);
+                index.writeInt(migration.version());
+                index.writeLong(migration.checksum());
+                writeString(index, migration.fileName());
+                index.writeInt(migration.headers().size());
+                for (Map.Entry<String, String> entry : migration.headers().entrySet()) {
+                    writeString(index, entry.getKey());
+                    writeString(index, entry.getValue());
+                }
+                index.writeInt(migration.upStatements().size());
+                index.writeLong(block[0]);
+                index.writeLong(block[1]);
+                index.writeInt(migration.downStatements().size());
+                index.writeLong(block[2]);
+                index.writeLong(block[3]);
+            }
+            index.writeLong(indexOffset);
+            index.writeInt(MAGIC);
+            index.flush();
+        }
+    }
+
+    /**
+     * Reads the index of a bundle and returns its migrations.
+     *
+     * @param bundle the location of the bundle
+     * @return the migrations of the bundle, in the order they were written
+     * @throws RuntimeException if the bundle cannot be read or is corrupt
+     */
+    public static List<ParsedMigration> read(URL bundle) {
+        log.info("Reading migration bundle: {}", bundle);
+        try {
+            Path file = localFile(bundle);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < HEADER_SIZE + FOOTER_SIZE) {
+                    throw new IOException("Not a migration bundle: " + bundle);
+                }
+                ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+                ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+                long indexOffset = footer.getLong();
+                if (header.getInt() != MAGIC || footer.getInt() != MAGIC) {
+                    throw new IOException("Not a migration bundle: " + bundle);
+                }
+                int formatVersion = header.getInt();
+                if (formatVersion != FORMAT_VERSION) {
+                    throw new IOException("Unsupported migration bundle format version %d in %s"
+                            .formatted(formatVersion, bundle));
+                }
+                if (indexOffset < HEADER_SIZE || indexOffset > size - FOOTER_SIZE) {
+                    throw new IOException("Corrupt index offset in migration bundle " + bundle);
+                }
+
+                DataInputStream index = new DataInputStream(new BufferedInputStream(
+                        new ChannelInputStream(channel, indexOffset, size - FOOTER_SIZE - indexOffset)));
+                int count = index.readInt();
+                List<ParsedMigration> migrations = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int version = index.readInt();
+                    long checksum = index.readLong();
+                    String fileName = readString(index);
+                    int headerCount = index.readInt();
+                    Map<String, String> headers = new HashMap<>();
+                    for (int h = 0; h < headerCount; h++) {
+                        headers.put(readString(index), readString(index));
+                    }
+                    MigrationSection up = readSection(file, index);
+                    MigrationSection down = readSection(file, index);
+                    migrations.add(new ParsedMigration(version, fileName, up, down, headers, checksum));
+                }
+
+                log.info("Loaded {} migrations from bundle {}", migrations.size(), bundle);
+                return List.copyOf(migrations);
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            log.error("Error reading migration bundle: {}", bundle, e);
+            throw new RuntimeException("Error reading migration bundle " + bundle, e);
+        }
+    }
+
+    /**
+     * Returns the bundle as a local file, copying a bundle inside a jar to a temporary file by streaming, so it never
+     * has to fit into the heap.
+     */
+    private static Path localFile(URL bundle) throws IOException, URISyntaxException {
+        if ("file".equals(bundle.getProtocol())) {
+            return Path.of(bundle.toURI());
+        }
+        Path file = Files.createTempFile("migrations", RESOURCE_EXTENSION);
+        file.toFile().deleteOnExit();
+        try (InputStream in = bundle.openStream()) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        log.debug("Extracted migration bundle {} to {}", bundle, file);
+        return file;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated migration bundle");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static MigrationSection readSection(Path file, DataInputStream index) throws IOException {
+        int size = index.readInt();
+        long offset = index.readLong();
+        long length = index.readLong();
+        return MigrationSection.streamed(() -> new BlockCursor(file, offset, length, size), size);
+    }
+
+    private static void writeBlock(OutputStream out, MigrationSection section) throws IOException {
+        Deflater deflater = new Deflater();
+        try (StatementCursor cursor = section.open()) {
+            DataOutputStream block = new DataOutputStream(new DeflaterOutputStream(new NonClosingOutputStream(out),
+                    deflater, 64 * 1024));
+            while (cursor.hasNext()) {
+                writeString(block, cursor.next());
+            }
+            block.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Cursor inflating one section block statement by statement, reading the block from its own channel.
+     */
+    private static final class BlockCursor implements StatementCursor {
+        private final Inflater inflater = new Inflater();
+        private final FileChannel channel;
+        private final DataInputStream in;
+        private int remaining;
+
+        private BlockCursor(Path file, long offset, long length, int size) {
+            try {
+                this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            } catch (IOException e) {
+                inflater.end();
+                throw new UncheckedIOException("Cannot open migration bundle " + file, e);
+            }
+            this.in = new DataInputStream(new InflaterInputStream(new ChannelInputStream(channel, offset, length),
+                    inflater, 64 * 1024));
+            this.remaining = size;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public String next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                remaining--;
+                return new String(bytes, StandardCharsets.UTF_8);
+            } catch (EOFException e) {
+                throw new UncheckedIOException("Truncated statement block in migration bundle", e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            inflater.end();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Stream over a range of a file channel, read with positional reads.
+     */
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        private ChannelInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, remaining)), position);
+            if (count > 0) {
+                position += count;
+                remaining -= count;
+            }
+            return count;
+        }
+    }
+
+    private static final class NonClosingOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        private NonClosingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package by.eugene.maven.migrations.bundle;
+
+import by.eugene.maven.config.MigrationSettings;
+import by.eugene.maven.migrations.MigrationFileReader;
+import by.eugene.maven.migrations.MigrationLoader;
+import by.eugene.maven.migrations.ParsedMigration;
+import by.eugene.maven.migrations.source.FileSystemSource;
+import by.eugene.maven.migrations.source.IndexedClasspathSource;
+import by.eugene.maven.migrations.source.MigrationSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Build-time compiler of a migration directory into a {@link MigrationBundle}.
+ * <p>
+ * The compiler runs in the {@code process-classes} phase of the Maven build (see {@code pom.xml}), after the
+ * migration files have been copied to the output directory. It parses and validates every migration with the same
+ * {@link MigrationLoader} used at runtime, so malformed files fail the build instead of a production run, and
+ * writes the bundle next to the compiled classes, from where it is packaged into the jar. Next to the bundle it
+ * writes the index of the migration directory used by {@link IndexedClasspathSource}, so the directory can be listed
+ * at runtime without scanning the jar.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * java by.eugene.maven.migrations.bundle.MigrationBundleCompiler target/classes migrations
+ * </pre>
+ */
+@Slf4j
+public class MigrationBundleCompiler {
+
+    /**
+     * Compiles the migration directory found in the given output directory.
+     *
+     * @param args the output directory (for example {@code target/classes}) and the migration directory inside it
+     * @throws IOException if the migration directory cannot be listed or the bundle cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: MigrationBundleCompiler <output directory> <migration directory>");
+        }
+
+        Path outputDirectory = Path.of(args[0]);
+        String migrationDirectory = MigrationBundle.normalizeDirectory(args[1]);
+        Path bundleFile = outputDirectory.resolve(MigrationBundle.resourceName(migrationDirectory));
+        Path indexFile = outputDirectory.resolve(IndexedClasspathSource.indexName(migrationDirectory));
+
+        Path sourceDirectory = outputDirectory.resolve(migrationDirectory);
+        if (!Files.isDirectory(sourceDirectory)) {
+            log.warn("Migration directory {} not found; no migration bundle is produced", sourceDirectory);
+            Files.deleteIfExists(bundleFile);
+            Files.deleteIfExists(indexFile);
+            return;
+        }
+
+        MigrationSource source = new FileSystemSource(sourceDirectory);
+        List<String> fileNames = source.list();
+
+        MigrationLoader loader = new MigrationLoader(new MigrationFileReader(MigrationSettings.defaults()),
+                Runtime.getRuntime().availableProcessors());
+        List<ParsedMigration> migrations = loader.load(source);
+
+        MigrationBundle.write(bundleFile, migrations);
+        IndexedClasspathSource.writeIndex(indexFile, fileNames);
+        log.info("Compiled {} migrations from {} into bundle {} ({} bytes)",
+                migrations.size(), sourceDirectory, bundleFile, Files.size(bundleFile));
+    }
+}
@@ -0,0 +1,134 @@
+package by.eugene.maven.migrations.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lock risk class of a SQL statement, ordered from harmless to most disruptive.
+ * <p>
+ * The class is derived from the leading keywords of the statement, following the table-level lock modes PostgreSQL
+ * documents for each command: for example {@code CREATE INDEX} takes a {@code SHARE} lock that blocks writes,
+ * while {@code CREATE INDEX CONCURRENTLY} does not, and most forms of {@code ALTER TABLE} take an
+ * {@code ACCESS EXCLUSIVE} lock that blocks reads as well. The classification is a static estimate used by the
+ * migration plan; it does not consult the database.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * LockRisk risk = LockRisk.classify("CREATE INDEX idx_orders_customer ON orders (customer_id)");
+ * // BLOCKS_WRITES
+ * </pre>
+ */
+public enum LockRisk {
+    /**
+     * Takes no lock that conflicts with ordinary reads and writes.
+     */
+    NONE("no conflicting locks"),
+    /**
+     * Data modification; takes row locks and a {@code ROW EXCLUSIVE} table lock.
+     */
+    ROW("row locks"),
+    /**
+     * Could not be classified, for example {@code DO} blocks and procedure calls.
+     */
+    UNKNOWN("unknown, review manually"),
+    /**
+     * Takes a {@code SHARE} or stronger lock that blocks writes to the table while it is held.
+     */
+    BLOCKS_WRITES("blocks writes"),
+    /**
+     * Takes an {@code ACCESS EXCLUSIVE} lock that blocks reads and writes while it is held.
+     */
+    BLOCKS_ALL("blocks reads and writes");
+
+    private static final int MAX_WORDS = 16;
+
+    private final String description;
+
+    LockRisk(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Returns a short human-readable description of the risk class.
+     *
+     * @return the description
+     */
+    public String description() {
+        return description;
+    }
+
+    /**
+     * Classifies a single SQL statement.
+     *
+     * @param sql the statement, without leading comments
+     * @return the lock risk class
+     */
+    public static LockRisk classify(String sql) {
+        List<String> words = leadingWords(sql);
+        if (words.isEmpty()) {
+            return NONE;
+        }
+
+        return switch (words.get(0)) {
+            case "SELECT", "SET", "RESET", "SHOW", "COMMENT", "GRANT", "REVOKE", "ANALYZE", "NOTIFY" -> NONE;
+            case "INSERT", "UPDATE", "DELETE", "MERGE", "COPY", "WITH" -> ROW;
+            case "CREATE" -> classifyCreate(words);
+            case "DROP" -> words.contains("CONCURRENTLY") ? NONE : BLOCKS_ALL;
+            case "ALTER" -> classifyAlter(words);
+            case "TRUNCATE", "LOCK", "CLUSTER" -> BLOCKS_ALL;
+            case "VACUUM" -> words.contains("FULL") ? BLOCKS_ALL : NONE;
+            case "REINDEX" -> words.contains("CONCURRENTLY") ? NONE : BLOCKS_WRITES;
+            case "REFRESH" -> words.contains("CONCURRENTLY") ? ROW : BLOCKS_ALL;
+            default -> UNKNOWN;
+        };
+    }
+
+    private static LockRisk classifyCreate(List<String> words) {
+        if (words.contains("TRIGGER")) {
+            return BLOCKS_WRITES;
+        }
+        int position = 1;
+        if (position < words.size() && words.get(position).equals("UNIQUE")) {
+            position++;
+        }
+        if (position < words.size() && words.get(position).equals("INDEX")) {
+            return position + 1 < words.size() && words.get(position + 1).equals("CONCURRENTLY")
+                    ? NONE
+                    : BLOCKS_WRITES;
+        }
+        return NONE;
+    }
+
+    private static LockRisk classifyAlter(List<String> words) {
+        String object = words.size() > 1 ? words.get(1) : "";
+        return switch (object) {
+            case "TABLE" -> words.contains("VALIDATE") ? NONE : BLOCKS_ALL;
+            case "INDEX", "VIEW", "MATERIALIZED", "TRIGGER" -> BLOCKS_ALL;
+            default -> NONE;
+        };
+    }
+
+    /**
+     * Returns up to {@value #MAX_WORDS} leading keywords and identifiers of the statement in upper case.
+     */
+    private static List<String> leadingWords(String sql) {
+        List<String> words = new ArrayList<>();
+        int position = 0;
+        while (position < sql.length() && words.size() < MAX_WORDS) {
+            char c = sql.charAt(position);
+            if (Character.isLetter(c) || c == '_') {
+                int start = position;
+                while (position < sql.length()
+                        && (Character.isLetterOrDigit(sql.charAt(position)) || sql.charAt(position) == '_')) {
+                    position++;
+                }
+                words.add(sql.substring(start, position).toUpperCase(Locale.ROOT));
+            } else {
+                position++;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,115 @@
+package by.eugene.maven.migrations.plan;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ordered actions that {@code migrate} or {@code rollback} would perform, computed without executing anything.
+ * <p>
+ * A plan is built by {@link MigrationPlanner} from the loaded migrations and a single read of the history table.
+ * Every step lists the statement count, the number of statements per {@link LockRisk} class, the statements that
+ * block writes or reads, and a duration predicted from the execution times recorded for previous migrations.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationPlan plan = migrationManager.planMigrations();
+ * plan.steps().forEach(step -&gt; System.out.println(step.fileName() + ": " + step.highestRisk()));
+ * </pre>
+ *
+ * @param direction      whether the plan applies or rolls back migrations
+ * @param currentVersion the current database version
+ * @param targetVersion  the database version after the plan is executed
+ * @param steps          the steps in execution order
+ */
+public record MigrationPlan(Direction direction, int currentVersion, int targetVersion, List<Step> steps) {
+
+    /**
+     * Creates a new plan, defensively copying the steps.
+     */
+    public MigrationPlan {
+        steps = List.copyOf(steps);
+    }
+
+    /**
+     * Returns whether the plan has nothing to do.
+     *
+     * @return {@code true} if the plan has no steps
+     */
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * Returns the predicted duration of the whole plan.
+     *
+     * @return the predicted duration in milliseconds, or {@code -1} if no prediction is possible
+     */
+    public long predictedMs() {
+        long total = 0;
+        for (Step step : steps) {
+            if (step.predictedMs() < 0) {
+                return -1;
+            }
+            total += step.predictedMs();
+        }
+        return total;
+    }
+
+    /**
+     * Direction of a plan.
+     */
+    public enum Direction {
+        /**
+         * Applies the pending migrations.
+         */
+        MIGRATE,
+        /**
+         * Rolls back applied migrations.
+         */
+        ROLLBACK
+    }
+
+    /**
+     * One migration or rollback of a plan.
+     *
+     * @param version            the migration version
+     * @param fileName           the migration file name
+     * @param statementCount     the number of statements that would be executed
+     * @param lockRisks          the number of statements per lock risk class
+     * @param blockingStatements abbreviated statements that block writes or reads, at most a few per step
+     * @param transactional      whether the migration runs inside the migration transaction
+     * @param predictedMs        the predicted duration in milliseconds, or {@code -1} if unknown
+     */
+    public record Step(int version,
+                       String fileName,
+                       int statementCount,
+                       Map<LockRisk, Integer> lockRisks,
+                       List<String> blockingStatements,
+                       boolean transactional,
+                       long predictedMs) {
+
+        /**
+         * Creates a new step, defensively copying the collections.
+         */
+        public Step {
+            lockRisks = Map.copyOf(lockRisks);
+            blockingStatements = List.copyOf(blockingStatements);
+        }
+
+        /**
+         * Returns the most disruptive lock risk class among the statements of the step.
+         *
+         * @return the highest lock risk class, {@link LockRisk#NONE} for a step without statements
+         */
+        public LockRisk highestRisk() {
+            LockRisk highest = LockRisk.NONE;
+            for (LockRisk risk : lockRisks.keySet()) {
+                if (risk.compareTo(highest) > 0) {
+                    highest = risk;
+                }
+            }
+            return highest;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package by.eugene.maven.migrations.plan;
+
+import by.eugene.maven.migrations.HistorySnapshot;
+import by.eugene.maven.migrations.MigrationIndex;
+import by.eugene.maven.migrations.MigrationSection;
+import by.eugene.maven.migrations.ParsedMigration;
+import by.eugene.maven.migrations.StatementCursor;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds {@link MigrationPlan}s from the loaded migrations and a snapshot of the history table.
+ * <p>
+ * The planner works entirely in memory: the caller reads the history table once into a {@link HistorySnapshot}, and
+ * the planner selects the steps with the same rules as {@code migrate} and {@code rollback}, classifies every
+ * statement with {@link LockRisk#classify(String)} and predicts durations from the average statement execution time
+ * recorded in the history table.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationPlan plan = MigrationPlanner.planMigrate(index, HistorySnapshot.load(connection));
+ * </pre>
+ */
+public final class MigrationPlanner {
+    private static final int MAX_BLOCKING_STATEMENTS = 5;
+    private static final int MAX_STATEMENT_LENGTH = 100;
+
+    private MigrationPlanner() {
+    }
+
+    /**
+     * Plans applying every migration that is not recorded in the history, starting with the latest baseline when
+     * the history is empty.
+     *
+     * @param index   the loaded migrations
+     * @param history the snapshot of the history table
+     * @return the plan
+     */
+    public static MigrationPlan planMigrate(MigrationIndex index, HistorySnapshot history) {
+        List<MigrationPlan.Step> steps = new ArrayList<>();
+        int targetVersion = history.currentVersion();
+        for (ParsedMigration migration : index.pending(history)) {
+            steps.add(step(migration, migration.upStatements(), history.averageStatementMs()));
+            targetVersion = Math.max(targetVersion, migration.version());
+        }
+        return new MigrationPlan(MigrationPlan.Direction.MIGRATE, history.currentVersion(), targetVersion, steps);
+    }
+
+    /**
+     * Plans rolling back to the given version.
+     *
+     * @param index         the loaded migrations
+     * @param history       the snapshot of the history table
+     * @param targetVersion the version to roll back to
+     * @return the plan
+     */
+    public static MigrationPlan planRollback(MigrationIndex index, HistorySnapshot history, int targetVersion) {
+        int currentVersion = history.currentVersion();
+        List<MigrationPlan.Step> steps = new ArrayList<>();
+        for (ParsedMigration migration : index.rollbackRange(targetVersion, currentVersion)) {
+            steps.add(step(migration, migration.downStatements(), history.averageStatementMs()));
+        }
+        return new MigrationPlan(MigrationPlan.Direction.ROLLBACK, currentVersion,
+                Math.min(targetVersion, currentVersion), steps);
+    }
+
+    private static MigrationPlan.Step step(ParsedMigration migration, MigrationSection section,
+                                           double averageStatementMs) {
+        Map<LockRisk, Integer> lockRisks = new EnumMap<>(LockRisk.class);
+        List<String> blockingStatements = new ArrayList<>();
+        int statements = 0;
+        try (StatementCursor cursor = section.open()) {
+            while (cursor.hasNext()) {
+                String sql = cursor.next();
+                LockRisk risk = LockRisk.classify(sql);
+                lockRisks.merge(risk, 1, Integer::sum);
+                if (risk.compareTo(LockRisk.BLOCKS_WRITES) >= 0 && blockingStatements.size() < MAX_BLOCKING_STATEMENTS) {
+                    blockingStatements.add(abbreviate(sql));
+                }
+                statements++;
+            }
+        }
+
+        long predictedMs = averageStatementMs < 0 ? -1 : Math.round(averageStatementMs * statements);
+        return new MigrationPlan.Step(migration.version(), migration.fileName(), statements, lockRisks,
+                blockingStatements, migration.directives().transactional(), predictedMs);
+    }
+
+    private static String abbreviate(String sql) {
+        String collapsed = sql.replaceAll("\\s+", " ");
+        return collapsed.length() <= MAX_STATEMENT_LENGTH
+                ? collapsed
+                : collapsed.substring(0, MAX_STATEMENT_LENGTH - 3) + "...";
+    }
+}
@@ -0,0 +1,96 @@
+package by.eugene.maven.migrations.source;
+
+import by.eugene.maven.migrations.bundle.MigrationBundle;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * {@link MigrationSource} scanning a directory on the classpath.
+ * <p>
+ * An exploded classpath directory is listed with {@link Files#list}. A directory inside a jar without a generated
+ * index (see {@link IndexedClasspathSource}) is listed by enumerating the jar entries, which works but reads the
+ * whole jar directory; builds that package migrations should rely on the generated index instead.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationSource source = new ClasspathDirectorySource("migrations");
+ * </pre>
+ */
+@Slf4j
+public class ClasspathDirectorySource implements MigrationSource {
+    private final String directory;
+
+    /**
+     * Creates a source for the given classpath directory.
+     *
+     * @param directory the classpath directory, without leading or trailing slashes
+     */
+    public ClasspathDirectorySource(String directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public List<String> list() {
+        try {
+            log.info("Reading files from directory: {}", directory);
+            URL url = ClasspathDirectorySource.class.getClassLoader().getResource(directory);
+            if (url == null) {
+                log.error("Directory {} not found in resources.", directory);
+                throw new IOException("Directory %s not found in resources".formatted(directory));
+            }
+
+            if ("jar".equals(url.getProtocol())) {
+                log.warn("Migration directory {} has no generated index; scanning all entries of jar {}", directory, url);
+                return listJar(url);
+            }
+
+            Path directoryPath = Path.of(url.toURI());
+            try (Stream<Path> paths = Files.list(directoryPath)) {
+                return paths
+                        .filter(Files::isRegularFile)
+                        .map(path -> directoryPath.getFileName() + "/" + path.getFileName())
+                        .filter(MigrationSource::isMigrationFile)
+                        .sorted()
+                        .toList();
+            }
+        } catch (URISyntaxException | IOException e) {
+            log.error("Error while reading files from directory: {}", directory, e);
+            throw new RuntimeException("Error while path parsing", e);
+        }
+    }
+
+    @Override
+    public URL resolve(String fileName) {
+        return ClasspathDirectorySource.class.getClassLoader().getResource(fileName);
+    }
+
+    @Override
+    public URL bundle() {
+        URL bundle = ClasspathDirectorySource.class.getClassLoader().getResource(MigrationBundle.resourceName(directory));
+        return bundle != null && GeneratedResources.isCurrent(bundle, directory) ? bundle : null;
+    }
+
+    private List<String> listJar(URL url) throws IOException {
+        String prefix = directory + "/";
+        JarURLConnection connection = (JarURLConnection) url.openConnection();
+        JarFile jar = connection.getJarFile();
+        return jar.stream()
+                .filter(entry -> !entry.isDirectory())
+                .map(JarEntry::getName)
+                .filter(name -> name.startsWith(prefix) && name.indexOf('/', prefix.length()) < 0)
+                .filter(MigrationSource::isMigrationFile)
+                .sorted()
+                .toList();
+    }
+}
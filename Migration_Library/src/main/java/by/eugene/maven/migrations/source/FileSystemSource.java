@@ -0,0 +1,69 @@
+package by.eugene.maven.migrations.source;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * {@link MigrationSource} reading migration files from a directory on the filesystem, outside of the classpath.
+ * <p>
+ * File names are formed from the directory name and the file name, for example {@code migrations/1.sql} for
+ * {@code /opt/app/migrations/1.sql}, so they match the names of the same files read from the classpath.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationSource source = new FileSystemSource(Path.of("/opt/app/migrations"));
+ * </pre>
+ */
+@Slf4j
+public class FileSystemSource implements MigrationSource {
+    private final Path directory;
+    private final String directoryName;
+
+    /**
+     * Creates a source for the given directory.
+     *
+     * @param directory the directory containing the migration files
+     */
+    public FileSystemSource(Path directory) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.directoryName = String.valueOf(this.directory.getFileName());
+    }
+
+    @Override
+    public List<String> list() {
+        log.info("Reading files from filesystem directory: {}", directory);
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .map(path -> directoryName + "/" + path.getFileName())
+                    .filter(MigrationSource::isMigrationFile)
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            log.error("Error while reading files from directory: {}", directory, e);
+            throw new UncheckedIOException("Error while reading migration directory " + directory, e);
+        }
+    }
+
+    @Override
+    public URL resolve(String fileName) {
+        Path file = directory.resolve(fileName.substring(fileName.indexOf('/') + 1));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return file.toUri().toURL();
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Unable to build URL for " + file, e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package by.eugene.maven.migrations.source;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Freshness check of the resources the build generates for a classpath migration directory, such as the
+ * {@link by.eugene.maven.migrations.bundle.MigrationBundle bundle} and the index of {@link IndexedClasspathSource}.
+ * <p>
+ * Inside a jar the generated resources are packaged together with the migration files, so they always match.
+ * In an exploded output directory they are only regenerated in the {@code process-classes} phase, while the
+ * migration files are copied in {@code process-resources}; after {@code mvn compile} or an IDE build a generated
+ * resource can therefore miss a new or changed file. Such a resource is only used when it is at least as new as the
+ * directory and every migration file in it; adding or removing a file updates the modification time of the
+ * directory, changing a file updates its own.
+ * </p>
+ */
+@Slf4j
+final class GeneratedResources {
+
+    private GeneratedResources() {
+    }
+
+    /**
+     * Checks whether a generated resource still matches the migration directory it was generated from.
+     *
+     * @param generated the location of the generated resource
+     * @param directory the classpath directory, without leading or trailing slashes
+     * @return {@code true} if the resource is packaged in a jar, or is not older than the exploded directory and
+     * its migration files
+     * @throws UncheckedIOException if the exploded directory cannot be listed
+     */
+    static boolean isCurrent(URL generated, String directory) {
+        if (!"file".equals(generated.getProtocol())) {
+            return true;
+        }
+        URL directoryUrl = GeneratedResources.class.getClassLoader().getResource(directory);
+        if (directoryUrl == null) {
+            log.warn("Migration directory {} not found next to the generated resource {}", directory, generated);
+            return false;
+        }
+        if (!"file".equals(directoryUrl.getProtocol())) {
+            return true;
+        }
+
+        try {
+            long generatedAt = Path.of(generated.toURI()).toFile().lastModified();
+            Path directoryPath = Path.of(directoryUrl.toURI());
+            boolean current;
+            try (Stream<Path> paths = Files.list(directoryPath)) {
+                current = directoryPath.toFile().lastModified() <= generatedAt
+                        && paths.filter(path -> MigrationSource.isMigrationFile(path.getFileName().toString()))
+                        .allMatch(path -> path.toFile().lastModified() <= generatedAt);
+            }
+            if (!current) {
+                log.warn("{} is older than the migration directory {}; the build did not regenerate it, reading "
+                        + "the directory instead", generated, directoryPath);
+            }
+            return current;
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Not a file location: " + generated, e);
+        } catch (IOException e) {
+            log.error("Error while listing migration directory: {}", directory, e);
+            throw new UncheckedIOException("Error while listing migration directory " + directory, e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package by.eugene.maven.migrations.source;
+
+import by.eugene.maven.migrations.bundle.MigrationBundle;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * {@link MigrationSource} listing a classpath directory from an index generated at build time.
+ * <p>
+ * The build writes {@code META-INF/migrations/<directory>.index} with one migration file name per line (see
+ * {@link by.eugene.maven.migrations.bundle.MigrationBundleCompiler}). Listing reads that single resource instead of
+ * scanning the directory, so it works the same way for exploded classpath directories and for the shaded jar, where
+ * a directory scan would otherwise have to enumerate every jar entry.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * URL index = classLoader.getResource(IndexedClasspathSource.indexName("migrations"));
+ * MigrationSource source = new IndexedClasspathSource("migrations", index);
+ * </pre>
+ */
+@Slf4j
+public class IndexedClasspathSource implements MigrationSource {
+    private static final String INDEX_DIRECTORY = "META-INF/migrations/";
+    private static final String INDEX_EXTENSION = ".index";
+
+    private final String directory;
+    private final URL index;
+
+    /**
+     * Creates a source for the given classpath directory and its index.
+     *
+     * @param directory the classpath directory, without leading or trailing slashes
+     * @param index     the location of the generated index
+     */
+    public IndexedClasspathSource(String directory, URL index) {
+        this.directory = directory;
+        this.index = index;
+    }
+
+    /**
+     * Returns the classpath location of the index generated for the given directory.
+     *
+     * @param directory the classpath directory, without leading or trailing slashes
+     * @return the classpath location of the index
+     */
+    public static String indexName(String directory) {
+        return INDEX_DIRECTORY + directory + INDEX_EXTENSION;
+    }
+
+    /**
+     * Writes the index of a migration directory.
+     *
+     * @param indexFile the index file to write
+     * @param fileNames the file names of the directory
+     * @throws IOException if the index cannot be written
+     */
+    public static void writeIndex(Path indexFile, List<String> fileNames) throws IOException {
+        Files.createDirectories(indexFile.toAbsolutePath().getParent());
+        Files.write(indexFile, fileNames.stream().sorted().toList(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public List<String> list() {
+        log.info("Reading files of directory {} from index {}", directory, index);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+            return reader.lines()
+                    .map(String::trim)
+                    .filter(MigrationSource::isMigrationFile)
+                    .toList();
+        } catch (IOException e) {
+            log.error("Error while reading migration index: {}", index, e);
+            throw new UncheckedIOException("Error while reading migration index " + index, e);
+        }
+    }
+
+    @Override
+    public URL resolve(String fileName) {
+        return IndexedClasspathSource.class.getClassLoader().getResource(fileName);
+    }
+
+    @Override
+    public URL bundle() {
+        URL bundle = IndexedClasspathSource.class.getClassLoader().getResource(MigrationBundle.resourceName(directory));
+        return bundle != null && GeneratedResources.isCurrent(bundle, directory) ? bundle : null;
+    }
+}
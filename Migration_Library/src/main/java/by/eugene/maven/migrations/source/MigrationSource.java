@@ -0,0 +1,100 @@
+package by.eugene.maven.migrations.source;
+
+import by.eugene.maven.migrations.bundle.MigrationBundle;
+
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Location that migration files are listed and read from.
+ * <p>
+ * A source lists the names of its migration files and resolves each name to a {@link URL} the file content can be
+ * read from. File names have the form {@code <directory>/<file>.sql} and are what the history table records, so
+ * the same migrations keep the same names whichever source they are read from. Only {@code .sql} files directly in
+ * the directory are listed; other files, such as the side-car data files of {@link by.eugene.maven.migrations.CopyBlock
+ * copy blocks}, and subdirectories are skipped, but can still be resolved.
+ * </p>
+ * <p>
+ * {@link #of(String)} selects the implementation from the configured {@code migration.directory}:
+ * </p>
+ * <ul>
+ *   <li><strong>filesystem:/path/to/dir</strong> - an external directory, see {@link FileSystemSource}.</li>
+ *   <li><strong>classpath:dir</strong> or <strong>dir</strong> - a classpath directory. When the build generated an
+ *   index for it, the {@link IndexedClasspathSource} lists it from the index, which also works inside the shaded
+ *   jar; otherwise, or when the index in an exploded output directory is older than the migration files, the
+ *   {@link ClasspathDirectorySource} scans it.</li>
+ * </ul>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * MigrationSource source = MigrationSource.of("migrations");
+ * for (String fileName : source.list()) {
+ *     ParsedMigration migration = reader.read(fileName, source.resolve(fileName));
+ * }
+ * </pre>
+ */
+public interface MigrationSource {
+    String CLASSPATH_PREFIX = "classpath:";
+    String FILESYSTEM_PREFIX = "filesystem:";
+    String MIGRATION_EXTENSION = ".sql";
+
+    /**
+     * Checks whether a file of a migration directory is a migration file that {@link #list()} returns.
+     *
+     * @param fileName the file name
+     * @return {@code true} if the file has the {@value #MIGRATION_EXTENSION} extension
+     */
+    static boolean isMigrationFile(String fileName) {
+        return fileName.endsWith(MIGRATION_EXTENSION);
+    }
+
+    /**
+     * Lists the migration files of the source.
+     *
+     * @return the file names, sorted by name
+     * @throws RuntimeException if the source cannot be listed
+     */
+    List<String> list();
+
+    /**
+     * Resolves a file name returned by {@link #list()} to the location of its content.
+     *
+     * @param fileName the file name
+     * @return the location of the file content, or {@code null} if the file does not exist
+     */
+    URL resolve(String fileName);
+
+    /**
+     * Returns the precompiled {@link MigrationBundle} of the source, if the build produced one.
+     * <p>
+     * A bundle in an exploded output directory is skipped when a migration file is newer than the bundle, because
+     * the build has not regenerated it yet.
+     * </p>
+     *
+     * @return the location of the bundle, or {@code null} if there is none or it is out of date
+     */
+    default URL bundle() {
+        return null;
+    }
+
+    /**
+     * Creates the source for a configured migration location.
+     *
+     * @param location the migration location, optionally prefixed with {@code classpath:} or {@code filesystem:}
+     * @return the source
+     */
+    static MigrationSource of(String location) {
+        if (location.startsWith(FILESYSTEM_PREFIX)) {
+            return new FileSystemSource(Path.of(location.substring(FILESYSTEM_PREFIX.length())));
+        }
+
+        String directory = MigrationBundle.normalizeDirectory(location.startsWith(CLASSPATH_PREFIX)
+                ? location.substring(CLASSPATH_PREFIX.length())
+                : location);
+        URL index = MigrationSource.class.getClassLoader().getResource(IndexedClasspathSource.indexName(directory));
+        return index != null && GeneratedResources.isCurrent(index, directory)
+                ? new IndexedClasspathSource(directory, index)
+                : new ClasspathDirectorySource(directory);
+    }
+}
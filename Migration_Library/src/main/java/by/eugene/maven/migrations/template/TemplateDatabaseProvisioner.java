@@ -0,0 +1,254 @@
+package by.eugene.maven.migrations.template;
+
+import by.eugene.maven.config.ConnectionManager;
+import by.eugene.maven.config.MigrationSettings;
+import by.eugene.maven.migrations.MigrationDigest;
+import by.eugene.maven.migrations.MigrationExecutor;
+import by.eugene.maven.migrations.MigrationManager;
+import by.eugene.maven.migrations.MigrationParseCache;
+import by.eugene.maven.migrations.source.MigrationSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Provisions databases by cloning a template database that is migrated once per migration set.
+ * <p>
+ * The template is named after the {@link MigrationDigest} of the local migrations, for example
+ * {@code migration_template_3f2a9c01d4e5b6a7}. The first call for a migration set creates and migrates the template;
+ * every later call only runs {@code CREATE DATABASE ... TEMPLATE ...}, which copies the template's files on the
+ * server instead of replaying the migrations. When the migrations change, the digest and therefore the template name
+ * change, so a stale template is never used: the new template is built on demand. Every use of a template is recorded
+ * in its database comment, and templates with the same prefix that have not been used for
+ * {@code migration.template.retention} days are dropped when a new template is built. CI pipelines that share a
+ * server and test different migration sets therefore keep their templates instead of dropping each other's.
+ * </p>
+ * <p>
+ * The template is migrated under a temporary name and renamed when the migrate run has committed, so a template
+ * with the final name is always complete. Concurrent builds of the same template from several processes are
+ * serialized with an advisory lock; the processes that waited find the finished template and only clone it.
+ * </p>
+ *
+ * <p><b>Usage:</b></p>
+ * <pre>
+ * TemplateDatabaseProvisioner provisioner = new TemplateDatabaseProvisioner(connectionManager, "migrations", settings);
+ * provisioner.createDatabase("orders_test_17");
+ * </pre>
+ */
+@Slf4j
+public class TemplateDatabaseProvisioner {
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+    private static final int BUILD_LOCK_CLASS = 0x4D494754;
+    private static final int DIGEST_LENGTH = 16;
+    private static final String TEMPLATE_INFIX = "_template_";
+    private static final String BUILDING_SUFFIX = "_new";
+    private static final int FILE_COPY_MIN_VERSION = 15;
+    private static final String LAST_USED_PREFIX = "last used at ";
+
+    private final ConnectionManager serverConnectionManager;
+    private final String migrationDirectory;
+    private final MigrationSettings settings;
+    private final String prefix;
+
+    /**
+     * Creates a provisioner.
+     *
+     * @param serverConnectionManager the connection manager of any database on the server; the configured user needs
+     *                                the {@code CREATEDB} privilege
+     * @param migrationDirectory      the directory where migration files are located
+     * @param settings                the tuning settings, including the template name prefix
+     * @throws RuntimeException if the template name prefix is not a valid lower-case identifier
+     */
+    public TemplateDatabaseProvisioner(ConnectionManager serverConnectionManager, String migrationDirectory,
+                                       MigrationSettings settings) {
+        this.serverConnectionManager = serverConnectionManager;
+        this.migrationDirectory = migrationDirectory;
+        this.settings = settings;
+        this.prefix = settings.getTemplatePrefix();
+        String longestName = prefix + TEMPLATE_INFIX + "0".repeat(DIGEST_LENGTH) + BUILDING_SUFFIX;
+        if (!IDENTIFIER.matcher(longestName).matches()) {
+            log.error("Invalid template database prefix: {}", prefix);
+            throw new RuntimeException("Invalid template database prefix '%s'; use at most %d lower-case letters, digits and underscores"
+                    .formatted(prefix, 63 - (longestName.length() - prefix.length())));
+        }
+    }
+
+    /**
+     * Creates a new database as a clone of the template of the current migrations, building the template first if
+     * it does not exist yet.
+     *
+     * @param databaseName the name of the database to create, a lower-case identifier
+     * @throws RuntimeException if the name is invalid, the template cannot be built or the database cannot be created
+     */
+    public void createDatabase(String databaseName) {
+        if (!IDENTIFIER.matcher(databaseName).matches()) {
+            throw new RuntimeException("Invalid database name '%s'; use lower-case letters, digits and underscores"
+                    .formatted(databaseName));
+        }
+        String template = ensureTemplate();
+
+        long start = System.nanoTime();
+        try (Connection connection = serverConnectionManager.openConnection();
+             Statement statement = connection.createStatement()) {
+            boolean fileCopy = connection.getMetaData().getDatabaseMajorVersion() >= FILE_COPY_MIN_VERSION;
+            statement.execute("CREATE DATABASE %s TEMPLATE %s%s"
+                    .formatted(quote(databaseName), quote(template), fileCopy ? " STRATEGY FILE_COPY" : ""));
+            log.info("Created database {} from template {} in {} ms", databaseName, template,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            log.error("Error creating database {} from template {}", databaseName, template, e);
+            throw new RuntimeException("Failed to create database %s from template %s".formatted(databaseName, template), e);
+        }
+    }
+
+    /**
+     * Returns the name of the template database of the current migrations, building it if it does not exist.
+     *
+     * @return the name of the template database
+     * @throws RuntimeException if the migration files cannot be read or the template cannot be built
+     */
+    public String ensureTemplate() {
+        String digest = MigrationDigest.scan(MigrationSource.of(migrationDirectory), settings.getLoadParallelism(),
+                MigrationParseCache.of(settings));
+        String template = prefix + TEMPLATE_INFIX + digest.substring(0, DIGEST_LENGTH);
+
+        try (Connection connection = serverConnectionManager.openConnection()) {
+            connection.setAutoCommit(true);
+            if (exists(connection, template)) {
+                log.debug("Template database {} is up to date", template);
+                touch(connection, template);
+                return template;
+            }
+
+            lock(connection, template, true);
+            try {
+                if (!exists(connection, template)) {
+                    build(connection, template);
+                }
+            } finally {
+                lock(connection, template, false);
+            }
+            touch(connection, template);
+            dropStaleTemplates(connection, template);
+            return template;
+        } catch (SQLException e) {
+            log.error("Error preparing template database {}", template, e);
+            throw new RuntimeException("Failed to prepare template database " + template, e);
+        }
+    }
+
+    private void build(Connection connection, String template) throws SQLException {
+        long start = System.nanoTime();
+        String building = template + BUILDING_SUFFIX;
+        log.info("Building template database {} from migration directory {}", template, migrationDirectory);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS " + quote(building));
+            statement.execute("CREATE DATABASE " + quote(building));
+
+            ConnectionManager target = serverConnectionManager.forDatabase(building);
+            try {
+                new MigrationManager(target, new MigrationExecutor(target, settings), migrationDirectory, settings)
+                        .executeMigrations();
+            } finally {
+                target.close();
+            }
+
+            statement.execute("ALTER DATABASE %s RENAME TO %s".formatted(quote(building), quote(template)));
+            statement.execute("ALTER DATABASE %s IS_TEMPLATE true".formatted(quote(template)));
+        }
+        log.info("Template database {} built in {} ms", template, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Drops the other templates of the prefix that have not been used within the retention period. A template
+     * without a recorded use, such as one built by an older version of the tool, starts its retention period now.
+     */
+    private void dropStaleTemplates(Connection connection, String current) throws SQLException {
+        Instant cutoff = Instant.now().minus(settings.getTemplateRetention());
+        List<String> stale = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT datname, shobj_description(oid, 'pg_database') FROM pg_database "
+                        + "WHERE datistemplate AND starts_with(datname, ?) AND datname <> ?")) {
+            statement.setString(1, prefix + TEMPLATE_INFIX);
+            statement.setString(2, current);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String template = resultSet.getString(1);
+                    Instant lastUsed = lastUsed(resultSet.getString(2));
+                    if (lastUsed == null) {
+                        touch(connection, template);
+                    } else if (lastUsed.isBefore(cutoff)) {
+                        stale.add(template);
+                    } else {
+                        log.debug("Keeping template database {}, last used at {}", template, lastUsed);
+                    }
+                }
+            }
+        }
+
+        for (String template : stale) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ALTER DATABASE %s IS_TEMPLATE false".formatted(quote(template)));
+                statement.execute("DROP DATABASE " + quote(template));
+                log.info("Dropped template database {}, unused for more than {} days", template,
+                        settings.getTemplateRetention().toDays());
+            } catch (SQLException e) {
+                log.warn("Unable to drop stale template database {}; it is retried on the next build", template, e);
+            }
+        }
+    }
+
+    /**
+     * Records the use of a template in its database comment. Only the owner of the template can set the comment;
+     * failing to set it is logged and does not fail the provisioning.
+     */
+    private static void touch(Connection connection, String template) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("COMMENT ON DATABASE %s IS '%s%s'"
+                    .formatted(quote(template), LAST_USED_PREFIX, Instant.now()));
+        } catch (SQLException e) {
+            log.warn("Unable to record the use of template database {}", template, e);
+        }
+    }
+
+    private static Instant lastUsed(String comment) {
+        if (comment == null || !comment.startsWith(LAST_USED_PREFIX)) {
+            return null;
+        }
+        try {
+            return Instant.parse(comment.substring(LAST_USED_PREFIX.length()));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static boolean exists(Connection connection, String template) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT 1 FROM pg_database WHERE datname = ? AND datistemplate")) {
+            statement.setString(1, template);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private static void lock(Connection connection, String template, boolean acquire) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT %s(%d, %d)".formatted(acquire ? "pg_advisory_lock" : "pg_advisory_unlock",
+                    BUILD_LOCK_CLASS, template.hashCode()));
+        }
+    }
+
+    private static String quote(String identifier) {
+        return '"' + identifier + '"';
+    }
+}
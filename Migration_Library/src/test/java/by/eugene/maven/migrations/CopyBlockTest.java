@@ -0,0 +1,134 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.exceptions.MigrationValidationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CopyBlockTest {
+    private static final String FILE = "migrations/3.sql";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void parsesAnnotatedInlineBlock() {
+        CopyBlock block = CopyBlock.parse(
+                "--copy public.countries(code, name) format=CSV header=true line=4 bytes=120--", FILE);
+
+        assertEquals("public.countries", block.table());
+        assertEquals(List.of("code", "name"), block.columns());
+        assertEquals("csv", block.format());
+        assertTrue(block.header());
+        assertNull(block.file());
+        assertEquals(4, block.line());
+        assertEquals(120, block.bytes());
+        assertEquals("COPY public.countries (code, name) FROM STDIN WITH (FORMAT csv, HEADER true)", block.command());
+        assertEquals("--copy public.countries(code, name) format=csv header=true--", block.marker());
+    }
+
+    @Test
+    void parsesSideCarBlock() {
+        CopyBlock block = CopyBlock.parse("--copy orders format=binary file=data/orders.bin--", FILE);
+
+        assertEquals(List.of(), block.columns());
+        assertEquals("data/orders.bin", block.file());
+        assertEquals("COPY orders FROM STDIN WITH (FORMAT binary)", block.command());
+    }
+
+    @Test
+    void detectsInlineDataWithTheSameAttributesAsParse() {
+        assertTrue(CopyBlock.hasInlineData("--copy t(a) format=csv--"));
+        assertFalse(CopyBlock.hasInlineData("--copy t(a)  file=a.csv  format=csv--"));
+        assertTrue(CopyBlock.hasInlineData("--copy t format=text--"));
+        assertThrows(MigrationValidationException.class, () -> CopyBlock.hasInlineData("--copy t(a)file=x.csv--"));
+        assertThrows(MigrationValidationException.class, () -> CopyBlock.parse("--copy t(a)file=x.csv--", FILE));
+    }
+
+    @Test
+    void rejectsPositionAttributesWrittenByAuthors() {
+        assertThrows(MigrationValidationException.class, () -> CopyBlock.hasInlineData("--copy t line=2--"));
+        assertThrows(MigrationValidationException.class,
+                () -> CopyBlock.hasInlineData("--copy t file=a.csv bytes=9--"));
+        assertThrows(MigrationValidationException.class,
+                () -> CopyBlock.parse("--copy t file=a.csv line=2 bytes=9--", FILE));
+        assertThrows(MigrationValidationException.class, () -> new SqlStatementTokenizer(
+                new StringReader("--copy t format=text line=1 bytes=2--\n1\n\\.\n"), Set.of(), 1).next());
+    }
+
+    @Test
+    void annotatesMarkerWithDataPosition() {
+        String annotated = CopyBlock.annotate("  --copy t(a) format=csv --  ", 7, 42);
+
+        assertEquals("--copy t(a) format=csv line=7 bytes=42--", annotated);
+        assertEquals(7, CopyBlock.parse(annotated, FILE).line());
+    }
+
+    @Test
+    void rejectsInvalidMarkers() {
+        for (String marker : List.of(
+                "--copy --",
+                "--copy t",
+                "--copy 1t format=csv line=1--",
+                "--copy t(a, 1b) line=1--",
+                "--copy t(a line=1--",
+                "--copy t format=json line=1--",
+                "--copy t format=text header=true line=1--",
+                "--copy t format=binary line=1--",
+                "--copy t format=text--",
+                "--copy t format=csv format=text line=1--",
+                "--copy t color=red line=1--",
+                "--copy t line=x--",
+                "--copy t file=../secret.csv--",
+                "--copy t file=/etc/passwd--")) {
+            assertThrows(MigrationValidationException.class, () -> CopyBlock.parse(marker, FILE), marker);
+        }
+    }
+
+    @Test
+    void namesMigrationFileInErrors() {
+        MigrationValidationException e = assertThrows(MigrationValidationException.class,
+                () -> CopyBlock.parse("--copy t format=json line=1--", FILE));
+
+        assertTrue(e.getMessage().contains(FILE), e.getMessage());
+    }
+
+    @Test
+    void opensInlineDataFromMigrationFile() throws IOException {
+        String script = "--migration 3--\n--migration--\n--copy t format=text--\nä\t1\nb\t2\n\\.\nSELECT 1;\n";
+        Path migration = Files.writeString(directory.resolve("3.sql"), script);
+        String statement = new SqlStatementTokenizer(new StringReader(script.substring(script.indexOf('\n') + 1)),
+                MigrationFileReader.SECTION_DELIMITERS, 2).next();
+        CopyBlock block = CopyBlock.parse(statement, FILE);
+
+        try (InputStream data = block.openData(migration.toUri().toURL())) {
+            assertEquals("ä\t1\nb\t2\n", new String(data.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void opensSideCarDataNextToMigrationFile() throws IOException {
+        Path migration = Files.writeString(directory.resolve("3.sql"), "--migration 3--\n");
+        Files.createDirectories(directory.resolve("data"));
+        Files.writeString(directory.resolve("data/t.csv"), "a,b\n");
+        CopyBlock block = CopyBlock.parse("--copy t format=csv file=data/t.csv--", FILE);
+
+        try (InputStream data = block.openData(migration.toUri().toURL())) {
+            assertEquals("a,b\n", new String(data.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package by.eugene.maven.migrations;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InsertCoalescingCursorTest {
+
+    @Test
+    void mergesRunOfSingleRowInserts() {
+        InsertCoalescingCursor cursor = cursor(500,
+                "INSERT INTO t (a, b) VALUES (1, 'x')",
+                "insert into t (a,  b) values (2, 'y')",
+                "INSERT INTO t (a, b) VALUES (3, NULL)");
+
+        assertEquals(List.of("INSERT INTO t (a, b) VALUES (1, 'x'), (2, 'y'), (3, NULL)"), read(cursor));
+        assertEquals(2, cursor.mergedStatements());
+    }
+
+    @Test
+    void splitsRunIntoChunksOfMaxRows() {
+        InsertCoalescingCursor cursor = cursor(2,
+                "INSERT INTO t (a) VALUES (1)",
+                "INSERT INTO t (a) VALUES (2)",
+                "INSERT INTO t (a) VALUES (3)");
+
+        assertEquals(List.of("INSERT INTO t (a) VALUES (1), (2)", "INSERT INTO t (a) VALUES (3)"), read(cursor));
+        assertEquals(1, cursor.mergedStatements());
+    }
+
+    @Test
+    void endsRunAtDifferentTableColumnsOrArity() {
+        List<String> statements = List.of(
+                "INSERT INTO t (a) VALUES (1)",
+                "INSERT INTO u (a) VALUES (2)",
+                "INSERT INTO u (b) VALUES (3)",
+                "INSERT INTO u VALUES (4)",
+                "INSERT INTO u VALUES (5, 6)");
+
+        assertEquals(statements, read(cursor(500, statements.toArray(String[]::new))));
+    }
+
+    @Test
+    void passesThroughOtherStatementsAndEndsRun() {
+        InsertCoalescingCursor cursor = cursor(500,
+                "INSERT INTO t (a) VALUES (1)",
+                "UPDATE t SET a = a + 1",
+                "INSERT INTO t (a) VALUES (2)",
+                "INSERT INTO t (a) VALUES (3)");
+
+        assertEquals(List.of("INSERT INTO t (a) VALUES (1)", "UPDATE t SET a = a + 1",
+                "INSERT INTO t (a) VALUES (2), (3)"), read(cursor));
+        assertEquals(1, cursor.mergedStatements());
+    }
+
+    @Test
+    void doesNotMergeInsertsWithSideEffectsOrExpressions() {
+        List<String> statements = List.of(
+                "INSERT INTO t (a) VALUES (1) RETURNING a",
+                "INSERT INTO t (a) VALUES (2) ON CONFLICT DO NOTHING",
+                "INSERT INTO t (a) SELECT 3",
+                "INSERT INTO t (a) VALUES (now())",
+                "INSERT INTO t (a) VALUES ((SELECT max(a) + 1 FROM t))",
+                "INSERT INTO t (a) VALUES ((1 + 2) * 3)",
+                "INSERT INTO t (a) VALUES ($$x$$)",
+                "INSERT INTO t (a) VALUES (1 -- one\n)",
+                "INSERT INTO t (a) VALUES (5)");
+
+        InsertCoalescingCursor cursor = cursor(500, statements.toArray(String[]::new));
+        assertEquals(statements, read(cursor));
+        assertEquals(0, cursor.mergedStatements());
+    }
+
+    @Test
+    void mergesConstantsCastsAndArrays() {
+        InsertCoalescingCursor cursor = cursor(500,
+                "INSERT INTO t (a, b, c) VALUES ('1.5'::numeric(10, 2), DATE '2024-01-01', ARRAY[1, 2])",
+                "INSERT INTO t (a, b, c) VALUES (-2, CURRENT_TIMESTAMP, E'it\\'s, (not) here')",
+                "INSERT INTO t (a, b, c) VALUES (DEFAULT, TRUE, 'a''b')");
+
+        assertEquals(List.of("INSERT INTO t (a, b, c) VALUES ('1.5'::numeric(10, 2), DATE '2024-01-01', ARRAY[1, 2]), "
+                + "(-2, CURRENT_TIMESTAMP, E'it\\'s, (not) here'), (DEFAULT, TRUE, 'a''b')"), read(cursor));
+        assertEquals(2, cursor.mergedStatements());
+    }
+
+    @Test
+    void mergesMultiRowInsertsWithSameShape() {
+        assertEquals(List.of("INSERT INTO t (a) VALUES (1), (2), (3)"), read(cursor(500,
+                "INSERT INTO t (a) VALUES (1), (2)",
+                "INSERT INTO t (a) VALUES (3)")));
+    }
+
+    @Test
+    void disablesMergingForMaxRowsOfOne() {
+        List<String> statements = List.of("INSERT INTO t (a) VALUES (1)", "INSERT INTO t (a) VALUES (2)");
+        InsertCoalescingCursor cursor = cursor(1, statements.toArray(String[]::new));
+
+        assertEquals(statements, read(cursor));
+        assertEquals(0, cursor.mergedStatements());
+    }
+
+    private static InsertCoalescingCursor cursor(int maxRows, String... statements) {
+        return new InsertCoalescingCursor(MigrationSection.of(List.of(statements)).open(), maxRows);
+    }
+
+    private static List<String> read(InsertCoalescingCursor cursor) {
+        List<String> statements = new ArrayList<>();
+        try (cursor) {
+            cursor.forEachRemaining(statements::add);
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,78 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.config.MigrationSettings;
+import by.eugene.maven.migrations.source.FileSystemSource;
+import by.eugene.maven.migrations.source.MigrationSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MigrationDigestTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void scanMatchesDigestOfParsedMigrations() throws IOException {
+        MigrationSource source = writeMigrations();
+
+        MigrationIndex index = MigrationIndex.of(new MigrationLoader(
+                new MigrationFileReader(MigrationSettings.defaults()), 1).load(source));
+
+        assertEquals(MigrationDigest.of(index), MigrationDigest.scan(source, 1));
+        assertEquals(MigrationDigest.of(index), MigrationDigest.scan(source, 4));
+    }
+
+    @Test
+    void takesFingerprintsOfUnchangedFilesFromParseCache() throws IOException {
+        MigrationSource source = writeMigrations();
+        MigrationParseCache cache = new MigrationParseCache(directory.resolve("cache"), Long.MAX_VALUE);
+        String digest = MigrationDigest.scan(source, 1);
+        assertEquals(digest, MigrationDigest.scan(source, 1, cache));
+        prime(cache, source);
+
+        Path file = directory.resolve("migrations/2.sql");
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.writeString(file, Files.readString(file).replace("SELECT 2", "SELECT 3"));
+        Files.setLastModifiedTime(file, modified);
+
+        assertEquals(digest, MigrationDigest.scan(source, 1, cache));
+        assertNotEquals(digest, MigrationDigest.scan(source, 1));
+    }
+
+    @Test
+    void hashesFilesWhoseCacheEntryIsOutOfDate() throws IOException {
+        MigrationSource source = writeMigrations();
+        MigrationParseCache cache = new MigrationParseCache(directory.resolve("cache"), Long.MAX_VALUE);
+        prime(cache, source);
+
+        Path file = directory.resolve("migrations/2.sql");
+        Files.writeString(file, Files.readString(file).replace("SELECT 2", "SELECT 3"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 60_000));
+
+        assertNull(cache.fingerprint("migrations/2.sql", source.resolve("migrations/2.sql")));
+        assertEquals(MigrationDigest.scan(source, 1), MigrationDigest.scan(source, 1, cache));
+    }
+
+    private MigrationSource writeMigrations() throws IOException {
+        Path migrations = Files.createDirectories(directory.resolve("migrations"));
+        Files.writeString(migrations.resolve("1.sql"), "--migration 1--\n--migration--\nSELECT 1;\n--rollback--\n");
+        Files.writeString(migrations.resolve("2.sql"), "--migration 2--\n--migration--\nSELECT 2;\n--rollback--\n");
+        return new FileSystemSource(migrations);
+    }
+
+    private static void prime(MigrationParseCache cache, MigrationSource source) {
+        for (String fileName : source.list()) {
+            URL url = source.resolve(fileName);
+            cache.get(fileName, url, () -> MigrationFileReader.readMigration(fileName, url, Long.MAX_VALUE));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.exceptions.MigrationValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MigrationDirectivesTest {
+    private static final String FILE = "migrations/42.sql";
+
+    @Test
+    void returnsNoneWithoutDirectives() {
+        assertSame(MigrationDirectives.NONE, MigrationDirectives.from(Map.of(), FILE));
+        assertSame(MigrationDirectives.NONE, MigrationDirectives.from(Map.of("author", "alice"), FILE));
+        assertSame(MigrationDirectives.NONE, MigrationDirectives.from(Map.of("transactional", "true"), FILE));
+    }
+
+    @Test
+    void mapsDirectivesToSettings() {
+        MigrationDirectives directives = MigrationDirectives.from(Map.of(
+                "transactional", "false",
+                "parallel_workers", "4",
+                "maintenance_work_mem", "2GB",
+                "lock_timeout", "0",
+                "statement_timeout", "5min"), FILE);
+
+        assertFalse(directives.transactional());
+        assertEquals(Map.of("statement_timeout", "5min", "lock_timeout", "0", "maintenance_work_mem", "2GB",
+                "max_parallel_maintenance_workers", "4"), directives.settings());
+        assertNull(directives.execution());
+    }
+
+    @Test
+    void parsesExecutionModeCaseInsensitively() {
+        assertEquals(ExecutionMode.MULTI_STATEMENT,
+                MigrationDirectives.from(Map.of("execution", "multi_statement"), FILE).execution());
+        assertEquals(ExecutionMode.AUTO, MigrationDirectives.from(Map.of("execution", "AUTO"), FILE).execution());
+        assertEquals(ExecutionMode.PER_STATEMENT, MigrationDirectives.from(
+                Map.of("transactional", "false", "execution", "per_statement"), FILE).execution());
+    }
+
+    @Test
+    void rejectsInvalidValues() {
+        for (Map<String, String> headers : List.of(
+                Map.of("transactional", "no"),
+                Map.of("statement_timeout", "30sec"),
+                Map.of("statement_timeout", "s"),
+                Map.of("lock_timeout", "-1"),
+                Map.of("lock_timeout", "1234567890123"),
+                Map.of("maintenance_work_mem", "2gb"),
+                Map.of("parallel_workers", "1025"),
+                Map.of("parallel_workers", "12345"),
+                Map.of("parallel_workers", "four"),
+                Map.of("execution", "parallel"))) {
+            assertThrows(MigrationValidationException.class, () -> MigrationDirectives.from(headers, FILE),
+                    headers.toString());
+        }
+    }
+
+    @Test
+    void rejectsBatchingOutsideTransactions() {
+        assertThrows(MigrationValidationException.class, () -> MigrationDirectives.from(
+                Map.of("transactional", "false", "execution", "batch"), FILE));
+        assertThrows(MigrationValidationException.class, () -> MigrationDirectives.from(
+                Map.of("transactional", "false", "execution", "multi_statement"), FILE));
+    }
+
+    @Test
+    void readsDirectivesFromParsedHeader() {
+        MigrationHeader header = MigrationHeader.parse(
+                "--migration 42 transactional=false maintenance_work_mem=512MB execution=auto--", FILE);
+        MigrationDirectives directives = MigrationDirectives.from(header.attributes(), FILE);
+
+        assertFalse(directives.transactional());
+        assertEquals(Map.of("maintenance_work_mem", "512MB"), directives.settings());
+        assertEquals(ExecutionMode.AUTO, directives.execution());
+    }
+}
@@ -0,0 +1,79 @@
+package by.eugene.maven.migrations;
+
+import by.eugene.maven.exceptions.MigrationValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MigrationHeaderTest {
+    private static final String FILE = "migrations/12.sql";
+
+    @Test
+    void parsesVersion() {
+        MigrationHeader header = MigrationHeader.parse("--migration 12--", FILE);
+
+        assertEquals(12, header.version());
+        assertEquals(Map.of(), header.attributes());
+    }
+
+    @Test
+    void parsesAttributesInDeclarationOrder() {
+        MigrationHeader header = MigrationHeader.parse(
+                "  --migration 12   transactional=false lock_timeout=5s owner.team=billing-core --  ", FILE);
+
+        assertEquals(12, header.version());
+        assertEquals(Map.of("transactional", "false", "lock_timeout", "5s", "owner.team", "billing-core"),
+                header.attributes());
+    }
+
+    @Test
+    void parsesLargestVersion() {
+        assertEquals(Integer.MAX_VALUE, MigrationHeader.parse("--migration 2147483647--", FILE).version());
+    }
+
+    @Test
+    void rejectsMalformedHeaderLines() {
+        for (String line : List.of("", "-- migration 1--", "--migration1--", "--migration 1", "--migration--",
+                "--migration 1-", "SELECT 1;")) {
+            assertThrows(MigrationValidationException.class, () -> MigrationHeader.parse(line, FILE), line);
+        }
+        assertThrows(MigrationValidationException.class, () -> MigrationHeader.parse(null, FILE));
+    }
+
+    @Test
+    void rejectsMissingOrInvalidVersion() {
+        assertMessageContains("no migration number", "--migration transactional=false--");
+        assertMessageContains("invalid migration number '12a'", "--migration 12a--");
+        assertMessageContains("no migration number", "--migration -1--");
+        assertMessageContains("out of range", "--migration 2147483648--");
+    }
+
+    @Test
+    void rejectsInvalidAttributes() {
+        assertMessageContains("expected key=value", "--migration 1 transactional--");
+        assertMessageContains("expected key=value", "--migration 1 Key=value--");
+        assertMessageContains("expected key=value", "--migration 1 1key=value--");
+        assertMessageContains("expected key=value", "--migration 1 =value--");
+        assertMessageContains("has no value", "--migration 1 key=--");
+        assertMessageContains("declared more than once", "--migration 1 key=a key=b--");
+    }
+
+    @Test
+    void namesFileInErrors() {
+        MigrationValidationException e = assertThrows(MigrationValidationException.class,
+                () -> MigrationHeader.parse("--migration x--", FILE));
+
+        assertTrue(e.getMessage().contains(FILE), e.getMessage());
+    }
+
+    private static void assertMessageContains(String expected, String line) {
+        MigrationValidationException e = assertThrows(MigrationValidationException.class,
+                () -> MigrationHeader.parse(line, FILE), line);
+        assertTrue(e.getMessage().contains(expected), e.getMessage());
+    }
+}
@@ -0,0 +1,231 @@
+package by.eugene.maven.migrations;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SqlStatementTokenizerTest {
+    private static final Set<String> MARKERS = Set.of("--migration--", "--rollback--");
+
+    @Test
+    void splitsStatementsOnSemicolons() {
+        assertEquals(List.of("CREATE TABLE a (id int)", "INSERT INTO a VALUES (1)"),
+                tokenize("CREATE TABLE a (id int);\n\n  INSERT INTO a VALUES (1);\n"));
+    }
+
+    @Test
+    void returnsLastStatementWithoutSemicolon() {
+        assertEquals(List.of("SELECT 1", "SELECT 2"), tokenize("SELECT 1; SELECT 2"));
+    }
+
+    @Test
+    void skipsEmptyStatements() {
+        assertEquals(List.of("SELECT 1"), tokenize(";;SELECT 1;;  ;"));
+    }
+
+    @Test
+    void keepsSemicolonsInStringLiteralsAndIdentifiers() {
+        assertEquals(List.of("SELECT 'a;b', \"c;d\"", "SELECT 2"), tokenize("SELECT 'a;b', \"c;d\"; SELECT 2;"));
+    }
+
+    @Test
+    void handlesDoubledQuotesInLiterals() {
+        assertEquals(List.of("SELECT 'it''s; fine'", "SELECT \"a\"\"b;\""),
+                tokenize("SELECT 'it''s; fine'; SELECT \"a\"\"b;\";"));
+    }
+
+    @Test
+    void handlesBackslashEscapesInEscapeStrings() {
+        assertEquals(List.of("SELECT E'\\';'", "SELECT e'a\\\\'", "SELECT 2"),
+                tokenize("SELECT E'\\';'; SELECT e'a\\\\'; SELECT 2;"));
+    }
+
+    @Test
+    void treatsBackslashAsOrdinaryCharacterInStandardStrings() {
+        assertEquals(List.of("SELECT 'a\\'", "SELECT 2"), tokenize("SELECT 'a\\'; SELECT 2;"));
+    }
+
+    @Test
+    void doesNotTreatIdentifierEndingInEAsEscapePrefix() {
+        assertEquals(List.of("SELECT name'\\'", "SELECT 2"), tokenize("SELECT name'\\'; SELECT 2;"));
+    }
+
+    @Test
+    void keepsAnonymousDollarQuotedBodies() {
+        String function = "CREATE FUNCTION f() RETURNS int AS $$ BEGIN RETURN 1; END; $$ LANGUAGE plpgsql";
+        assertEquals(List.of(function, "SELECT f()"), tokenize(function + ";\nSELECT f();"));
+    }
+
+    @Test
+    void keepsTaggedDollarQuotedBodies() {
+        String body = "DO $body$ BEGIN PERFORM $$x;$$; RAISE NOTICE '$body'; END $body$";
+        assertEquals(List.of(body, "SELECT 2"), tokenize(body + "; SELECT 2;"));
+    }
+
+    @Test
+    void closesDollarQuoteAfterPartialTagMatch() {
+        String body = "SELECT $ab$ $a $$ab$";
+        assertEquals(List.of(body, "SELECT 2"), tokenize(body + "; SELECT 2;"));
+    }
+
+    @Test
+    void treatsPositionalParametersAsOrdinaryText() {
+        assertEquals(List.of("PREPARE p AS SELECT $1 + $2", "SELECT 2"),
+                tokenize("PREPARE p AS SELECT $1 + $2; SELECT 2;"));
+    }
+
+    @Test
+    void treatsDollarInsideIdentifierAsOrdinaryText() {
+        assertEquals(List.of("SELECT a$b$c FROM t", "SELECT 2"), tokenize("SELECT a$b$c FROM t; SELECT 2;"));
+    }
+
+    @Test
+    void dropsLeadingAndTrailingLineComments() {
+        assertEquals(List.of("SELECT 1", "SELECT 2"),
+                tokenize("-- leading; comment\nSELECT 1 -- trailing; comment\n;\nSELECT 2; -- after\n"));
+    }
+
+    @Test
+    void keepsLineCommentsInsideStatements() {
+        assertEquals(List.of("SELECT 1, -- first; column\n2"), tokenize("SELECT 1, -- first; column\n2;"));
+    }
+
+    @Test
+    void handlesNestedBlockComments() {
+        assertEquals(List.of("SELECT 1", "SELECT 2"),
+                tokenize("/* outer /* inner; */ still; comment */ SELECT 1; SELECT 2 /* trailing; */;"));
+    }
+
+    @Test
+    void keepsBlockCommentsInsideStatements() {
+        assertEquals(List.of("SELECT /* a; /* b */ c */ 1"), tokenize("SELECT /* a; /* b */ c */ 1;"));
+    }
+
+    @Test
+    void keepsDivisionAndMinusOperators() {
+        assertEquals(List.of("SELECT 4 / 2 - 1"), tokenize("SELECT 4 / 2 - 1;"));
+    }
+
+    @Test
+    void failsOnUnterminatedLiteral() {
+        assertThrows(RuntimeException.class, () -> tokenize("SELECT 'abc; SELECT 2;"));
+    }
+
+    @Test
+    void failsOnUnterminatedDollarQuote() {
+        assertThrows(RuntimeException.class, () -> tokenize("SELECT $x$ abc;"));
+    }
+
+    @Test
+    void failsOnUnterminatedBlockComment() {
+        assertThrows(RuntimeException.class, () -> tokenize("SELECT 1; /* /* */"));
+    }
+
+    @Test
+    void switchesSectionsOnMarkers() {
+        SqlStatementTokenizer tokenizer = new SqlStatementTokenizer(new StringReader(
+                "SELECT 0;\n--migration--\nCREATE TABLE a (id int);\nINSERT INTO a VALUES (1)\n--rollback--  \nDROP TABLE a;"),
+                MARKERS);
+        List<String> sections = new ArrayList<>();
+        List<String> statements = new ArrayList<>();
+        while (tokenizer.hasNext()) {
+            statements.add(tokenizer.next());
+            sections.add(tokenizer.section());
+        }
+
+        assertEquals(List.of("SELECT 0", "CREATE TABLE a (id int)", "INSERT INTO a VALUES (1)", "DROP TABLE a"),
+                statements);
+        assertNull(sections.get(0));
+        assertEquals(List.of("--migration--", "--migration--", "--rollback--"), sections.subList(1, 4));
+        assertEquals(MARKERS, tokenizer.sectionsSeen());
+    }
+
+    @Test
+    void recordsMarkersOfEmptySections() {
+        SqlStatementTokenizer tokenizer = new SqlStatementTokenizer(new StringReader(
+                "--migration--\nSELECT 1;\n--rollback--\n"), MARKERS);
+        while (tokenizer.hasNext()) {
+            tokenizer.next();
+        }
+        assertEquals(MARKERS, tokenizer.sectionsSeen());
+    }
+
+    @Test
+    void ignoresMarkersInsideLiterals() {
+        assertEquals(List.of("SELECT '\n--rollback--\n'"),
+                tokenize(new SqlStatementTokenizer(new StringReader("SELECT '\n--rollback--\n';"), MARKERS)));
+    }
+
+    @Test
+    void returnsInlineCopyBlockWithDataPosition() {
+        String script = """
+                CREATE TABLE c (code text, name text);
+                --copy c(code, name) format=csv--
+                DE,Deutschland
+                É,École 😀
+                \\.
+                SELECT 1;
+                """;
+        List<String> statements = tokenize(new SqlStatementTokenizer(new StringReader(script), MARKERS, 3));
+
+        assertEquals(List.of("CREATE TABLE c (code text, name text)",
+                "--copy c(code, name) format=csv line=5 bytes=30--", "SELECT 1"), statements);
+    }
+
+    @Test
+    void countsCrLfLineEndingsInCopyData() {
+        String script = "--copy c format=text--\r\na\tb\r\n\\.\r\nSELECT 1;";
+        List<String> statements = tokenize(new SqlStatementTokenizer(new StringReader(script), MARKERS, 1));
+
+        assertEquals(List.of("--copy c format=text line=2 bytes=5--", "SELECT 1"), statements);
+    }
+
+    @Test
+    void endsPendingStatementAtCopyBlock() {
+        String script = "INSERT INTO c VALUES (1)\n--copy c format=text--\n1\n\\.\n";
+        List<String> statements = tokenize(new SqlStatementTokenizer(new StringReader(script), MARKERS, 1));
+
+        assertEquals(List.of("INSERT INTO c VALUES (1)", "--copy c format=text line=3 bytes=2--"), statements);
+    }
+
+    @Test
+    void returnsSideCarCopyBlockWithoutSkippingData() {
+        String script = "--copy orders format=binary file=orders.bin--\nSELECT 1;";
+        List<String> statements = tokenize(new SqlStatementTokenizer(new StringReader(script), MARKERS, 1));
+
+        assertEquals(List.of("--copy orders format=binary file=orders.bin--", "SELECT 1"), statements);
+    }
+
+    @Test
+    void failsOnUnterminatedCopyData() {
+        assertThrows(RuntimeException.class, () -> tokenize(new SqlStatementTokenizer(
+                new StringReader("--copy c format=text--\n1\n"), MARKERS, 1)));
+    }
+
+    @Test
+    void treatsCopyMarkersAsCommentsOutsideMigrationFiles() {
+        List<String> statements = tokenize("--copy c format=text--\nSELECT 1;");
+        assertEquals(List.of("SELECT 1"), statements);
+        assertFalse(statements.get(0).startsWith(CopyBlock.MARKER_PREFIX));
+    }
+
+    private static List<String> tokenize(String script) {
+        return tokenize(new SqlStatementTokenizer(new StringReader(script)));
+    }
+
+    private static List<String> tokenize(SqlStatementTokenizer tokenizer) {
+        List<String> statements = new ArrayList<>();
+        while (tokenizer.hasNext()) {
+            statements.add(tokenizer.next());
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,105 @@
+package by.eugene.maven.migrations.bundle;
+
+import by.eugene.maven.migrations.MigrationSection;
+import by.eugene.maven.migrations.ParsedMigration;
+import by.eugene.maven.migrations.StatementCursor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MigrationBundleTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsWrittenMigrations() throws IOException {
+        ParsedMigration first = new ParsedMigration(1, "migrations/1.sql",
+                MigrationSection.of(List.of("CREATE TABLE a (id int)", "INSERT INTO a VALUES ('é 😀')")),
+                MigrationSection.of(List.of("DROP TABLE a")),
+                Map.of("transaction", "false", "execution", "per_statement"), 0xCAFEBABEL);
+        ParsedMigration second = new ParsedMigration(2, "migrations/2.sql",
+                MigrationSection.of(List.of("SELECT 1")), MigrationSection.of(List.of()), Map.of(), -1L);
+        Path bundle = directory.resolve("META-INF/migrations/migrations.bundle");
+
+        MigrationBundle.write(bundle, List.of(first, second));
+        List<ParsedMigration> read = MigrationBundle.read(bundle.toUri().toURL());
+
+        assertEquals(2, read.size());
+        assertSameMigration(first, read.get(0));
+        assertSameMigration(second, read.get(1));
+        assertTrue(read.get(0).upStatements().isStreamed());
+    }
+
+    @Test
+    void readsSectionsIndependentlyAndRepeatedly() throws IOException {
+        List<String> statements = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            statements.add("INSERT INTO t VALUES (" + i + ", '" + "x".repeat(i % 100) + "')");
+        }
+        ParsedMigration migration = new ParsedMigration(7, "migrations/7.sql", MigrationSection.of(statements),
+                MigrationSection.of(List.of("TRUNCATE t")), Map.of(), 42L);
+        Path bundle = directory.resolve("large.bundle");
+        MigrationBundle.write(bundle, List.of(migration));
+
+        MigrationSection up = MigrationBundle.read(bundle.toUri().toURL()).get(0).upStatements();
+        try (StatementCursor cursor = up.open()) {
+            assertEquals(statements.get(0), cursor.next());
+            assertEquals(statements, up.toList());
+            assertEquals(statements.get(1), cursor.next());
+        }
+        assertEquals(10_000, up.size());
+    }
+
+    @Test
+    void readsEmptyBundle() throws IOException {
+        Path bundle = directory.resolve("empty.bundle");
+        MigrationBundle.write(bundle, List.of());
+
+        assertEquals(List.of(), MigrationBundle.read(bundle.toUri().toURL()));
+    }
+
+    @Test
+    void rejectsFilesThatAreNotBundles() throws IOException {
+        Path notBundle = Files.writeString(directory.resolve("1.sql"), "--migration 1--\nSELECT 1;\n");
+
+        assertThrows(RuntimeException.class, () -> MigrationBundle.read(notBundle.toUri().toURL()));
+    }
+
+    @Test
+    void rejectsTruncatedBundles() throws IOException {
+        Path bundle = directory.resolve("truncated.bundle");
+        MigrationBundle.write(bundle, List.of(new ParsedMigration(1, "migrations/1.sql",
+                MigrationSection.of(List.of("SELECT 1")), MigrationSection.of(List.of()), Map.of(), 1L)));
+        byte[] content = Files.readAllBytes(bundle);
+        Files.write(bundle, Arrays.copyOf(content, content.length - 3));
+
+        assertThrows(RuntimeException.class, () -> MigrationBundle.read(bundle.toUri().toURL()));
+    }
+
+    @Test
+    void normalizesDirectoryInResourceName() {
+        assertEquals("META-INF/migrations/db/migrations.bundle", MigrationBundle.resourceName("/db/migrations/"));
+    }
+
+    private static void assertSameMigration(ParsedMigration expected, ParsedMigration actual) {
+        assertEquals(expected.version(), actual.version());
+        assertEquals(expected.fileName(), actual.fileName());
+        assertEquals(expected.checksum(), actual.checksum());
+        assertEquals(expected.headers(), actual.headers());
+        assertEquals(expected.upStatements().toList(), actual.upStatements().toList());
+        assertEquals(expected.downStatements().toList(), actual.downStatements().toList());
+        assertEquals(expected.upStatements().size(), actual.upStatements().size());
+        assertEquals(expected.downStatements().size(), actual.downStatements().size());
+    }
+}